@@ -0,0 +1,51 @@
+package com.open.su;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moving average of the time spent waiting for a database connection.
+ * <p>
+ * {@link ItemService} records the time between the start of each transaction and the moment it holds a connection,
+ * which grows as soon as the pool is saturated. The average is exposed as the {@code stock.db.connection.wait} gauge.
+ */
+@ApplicationScoped
+public class ConnectionWaitMonitor {
+
+    /**
+     * Weight of the latest wait in the moving average
+     */
+    static final double WEIGHT = 0.1;
+
+    private double averageNanos;
+
+    @Inject
+    public ConnectionWaitMonitor(MeterRegistry registry) {
+        Gauge.builder("stock.db.connection.wait", this, monitor -> monitor.averageNanos() / TimeUnit.SECONDS.toNanos(1))
+                .description("Moving average of the time spent waiting for a database connection")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    /**
+     * Record the time a transaction waited for its connection
+     *
+     * @param waitNanos the wait in nanoseconds
+     */
+    public synchronized void record(long waitNanos) {
+        averageNanos += WEIGHT * (waitNanos - averageNanos);
+    }
+
+    /**
+     * Get the moving average of the connection waits
+     *
+     * @return the average wait in nanoseconds
+     */
+    public synchronized double averageNanos() {
+        return averageNanos;
+    }
+}
@@ -4,16 +4,30 @@ import io.quarkus.hibernate.reactive.panache.PanacheEntityBase;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
+import java.time.Instant;
 import java.util.Date;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 @Entity
 public class Item extends PanacheEntityBase {
 
+    /**
+     * Database columns of the item, by field name
+     */
+    static final Map<String, String> COLUMNS = Map.of(
+            "id", "id",
+            "stock", "stock",
+            "maxStock", "max_stock",
+            "minStock", "min_stock",
+            "createdAt", "created_at",
+            "updatedAt", "updated_at");
+
     @Id
     @Column(nullable = false, unique = true)
     UUID id;
@@ -23,6 +37,12 @@ public class Item extends PanacheEntityBase {
     Long maxStock;
     @Column(name = "min_stock", nullable = false)
     Long minStock = 0L;
+    /**
+     * Quantity held by reservations, still part of the stock until they are committed, see {@link StockReservations}
+     */
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    Long reserved = 0L;
     @Column(name = "created_at")
     @CreationTimestamp
     Date createdAt;
@@ -49,8 +69,22 @@ public class Item extends PanacheEntityBase {
      */
     public Item(UpdateItemRequest request) {
         this.id = UUID.fromString(request.getId());
-        this.stock = request.hasMinStock() ? request.getMinStock() : null;
         this.maxStock = request.hasMaxStock() ? request.getMaxStock() : null;
+        this.minStock = request.hasMinStock() ? request.getMinStock() : null;
+    }
+
+    /**
+     * Create a new item from a {@link GetItemDetailsResponse}, for example a cached one
+     *
+     * @param response the grpc response
+     */
+    public Item(GetItemDetailsResponse response) {
+        this.id = UUID.fromString(response.getId());
+        this.stock = response.getStock();
+        this.maxStock = response.getMaxStock();
+        this.minStock = response.getMinStock();
+        this.createdAt = Date.from(Instant.parse(response.getCreatedAt()));
+        this.updatedAt = Date.from(Instant.parse(response.getUpdatedAt()));
     }
 
     public Item() {
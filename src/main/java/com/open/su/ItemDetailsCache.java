@@ -0,0 +1,120 @@
+package com.open.su;
+
+import com.open.su.exceptions.ItemServiceException;
+import io.grpc.Deadline;
+import io.quarkus.cache.Cache;
+import io.quarkus.cache.CacheName;
+import io.quarkus.cache.CaffeineCache;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Cache of the {@link GetItemDetailsResponse} of each item.
+ * <p>
+ * Responses are immutable, so a cached response is returned as is without formatting the id and timestamps again.
+ * The cache is the {@code item-details} Caffeine cache, bounded and expired after write by the
+ * {@code quarkus.cache.caffeine."item-details".*} properties.
+ * <p>
+ * Entries are invalidated by {@link ItemService} once a mutation of the item is committed on this instance. Mutations
+ * committed by other instances are not seen, their entries are only dropped when they expire. An entry is cached as soon
+ * as its load starts, so concurrent misses of an item share a single load, and the entry of a load in flight acts as
+ * the version of the item: invalidating the item drops it, and the response of the load is then not cached since it
+ * may have been read before the commit. Mutations of other items do not affect it.
+ */
+@ApplicationScoped
+public class ItemDetailsCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ItemDetailsCache.class);
+
+    private final Cache cache;
+    private final boolean enabled;
+
+    @Inject
+    public ItemDetailsCache(@CacheName("item-details") Cache cache,
+                            @ConfigProperty(name = "stock-service.item-details-cache.enabled", defaultValue = "true") boolean enabled) {
+        this.cache = cache;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Get the cached response of an item, or load and cache it, bounded by the caller deadline
+     * <p>
+     * A load is shared by the callers of a miss, so it is not bounded by the deadline of the caller that started it:
+     * the loader is given no deadline, and each caller only waits for the load until its own deadline. A caller giving
+     * up does not cancel the load of the others.
+     *
+     * @param id       the id of the item
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @param loader   the loader of the response, used on cache misses, given the deadline of the load
+     * @return a {@link Uni} with the response
+     */
+    public Uni<GetItemDetailsResponse> get(UUID id, Deadline deadline, Function<Deadline, Uni<GetItemDetailsResponse>> loader) {
+        if (!enabled) {
+            return loader.apply(deadline);
+        }
+        // Subscribed apart from the caller, so that its cancellation does not reach the shared load
+        Uni<GetItemDetailsResponse> shared = Uni.createFrom().emitter(emitter -> cache.getAsync(id, key -> loader.apply(null))
+                .subscribe().with(emitter::complete, emitter::fail));
+        if (deadline == null) {
+            return shared;
+        }
+        return shared.ifNoItem().after(Duration.ofMillis(Math.max(0, deadline.timeRemaining(TimeUnit.MILLISECONDS)))).failWith(() -> {
+            String message = "Timed out waiting for the details of item with id " + id;
+            LOGGER.debug("[" + ItemService.Method.DETAILS + "] " + message);
+            return ItemServiceException.DEADLINE_EXCEEDED.withMessage(message);
+        });
+    }
+
+    /**
+     * Get the cached response of an item, without loading it
+     *
+     * @param id the id of the item
+     * @return the cached response, or {@code null} if it is not cached or still loading
+     */
+    public GetItemDetailsResponse getIfPresent(UUID id) {
+        if (!enabled) {
+            return null;
+        }
+        CompletableFuture<GetItemDetailsResponse> cached = cache.as(CaffeineCache.class).getIfPresent(id);
+        if (cached == null || !cached.isDone() || cached.isCompletedExceptionally()) {
+            return null;
+        }
+        return cached.getNow(null);
+    }
+
+    /**
+     * Invalidate the cached response of an item, must be called once the mutation of the item is committed
+     *
+     * @param id the id of the mutated item
+     */
+    public void invalidate(UUID id) {
+        invalidateAll(List.of(id));
+    }
+
+    /**
+     * Invalidate the cached responses of items, must be called once the mutation of the items is committed
+     *
+     * @param ids the ids of the mutated items
+     */
+    public void invalidateAll(Collection<UUID> ids) {
+        if (!enabled) {
+            return;
+        }
+        // The invalidation of a Caffeine cache is synchronous, the entries are gone once this returns
+        ids.forEach(id -> cache.invalidate(id).subscribe().with(
+                ignored -> {
+                },
+                t -> LOGGER.error("Failed to invalidate the cached details of item with id " + id, t)));
+    }
+}
@@ -0,0 +1,178 @@
+package com.open.su;
+
+import com.open.su.exceptions.ItemServiceException;
+import io.quarkus.panache.common.Sort;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.UUID;
+
+/**
+ * Fields of an item requested through a field mask.
+ * <p>
+ * The paths of the mask are the names of the fields of {@link PartialItem}, which are also the names of the item
+ * columns, so only the requested columns are selected and only the requested fields are converted. The id is always
+ * included. An empty mask requests every field.
+ */
+public final class ItemFields {
+
+    /**
+     * Columns of the item, in the order they are selected
+     */
+    static final List<String> COLUMNS = List.of("id", "stock", "max_stock", "min_stock", "created_at", "updated_at");
+
+    /**
+     * Every field of the item
+     */
+    public static final ItemFields ALL = new ItemFields(COLUMNS);
+
+    private final List<String> columns;
+
+    private ItemFields(List<String> columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Get the fields requested by the paths of a field mask
+     *
+     * @param paths the paths of the field mask
+     * @return the requested fields
+     * @throws ItemServiceException if a path is not a field of the item
+     */
+    public static ItemFields of(Collection<String> paths) {
+        if (paths.isEmpty()) {
+            return ALL;
+        }
+        for (String path : paths) {
+            if (!COLUMNS.contains(path)) {
+                throw ItemServiceException.INVALID_ARGUMENT.withMessage("Unknown item field " + path);
+            }
+        }
+        List<String> columns = COLUMNS.stream().filter(column -> column.equals("id") || paths.contains(column)).toList();
+        return columns.size() == COLUMNS.size() ? ALL : new ItemFields(columns);
+    }
+
+    /**
+     * Whether every field of the item is requested
+     *
+     * @return {@code true} if every field is requested
+     */
+    public boolean isAll() {
+        return columns.size() == COLUMNS.size();
+    }
+
+    /**
+     * Whether a field is requested
+     *
+     * @param column the column of the field
+     * @return {@code true} if the field is requested
+     */
+    public boolean contains(String column) {
+        return columns.contains(column);
+    }
+
+    /**
+     * Build the select clause of the requested columns
+     *
+     * @return the select clause, without the {@code FROM}
+     */
+    String select() {
+        StringJoiner select = new StringJoiner(", ", "SELECT ", "");
+        columns.forEach(select::add);
+        return select.toString();
+    }
+
+    /**
+     * Build the order by clause of a sort, restricted to the item columns
+     *
+     * @param sort the sort, or {@code null}
+     * @return the order by clause with a leading space, or an empty string if there is no sort
+     * @throws ItemServiceException if the sort is not on an item field
+     */
+    static String orderBy(Sort sort) {
+        if (sort == null || sort.getColumns().isEmpty()) {
+            return "";
+        }
+        StringJoiner orderBy = new StringJoiner(", ", " ORDER BY ", "");
+        for (Sort.Column column : sort.getColumns()) {
+            String name = Item.COLUMNS.get(column.getName());
+            if (name == null) {
+                throw ItemServiceException.INVALID_ARGUMENT.withMessage("Cannot sort items by " + column.getName());
+            }
+            orderBy.add(name + (column.getDirection() == Sort.Direction.Descending ? " DESC" : " ASC"));
+        }
+        return orderBy.toString();
+    }
+
+    /**
+     * Create an item from the values of the requested columns, as returned by a native query or read from a row
+     *
+     * @param result the values, in the order of {@link #select()}, or the id alone if it is the only column
+     * @return the item, with only the requested fields set
+     */
+    Item toItem(Object result) {
+        Object[] values = result instanceof Object[] array ? array : new Object[]{result};
+        Item item = new Item();
+        for (int i = 0; i < columns.size(); i++) {
+            Object value = values[i];
+            switch (columns.get(i)) {
+                case "id" -> item.id = value instanceof UUID id ? id : UUID.fromString(value.toString());
+                case "stock" -> item.stock = ((Number) value).longValue();
+                case "max_stock" -> item.maxStock = ((Number) value).longValue();
+                case "min_stock" -> item.minStock = ((Number) value).longValue();
+                case "created_at" -> item.createdAt = toDate(value);
+                case "updated_at" -> item.updatedAt = toDate(value);
+                default -> throw new IllegalStateException("Unknown item column " + columns.get(i));
+            }
+        }
+        return item;
+    }
+
+    /**
+     * Convert an item to a {@link PartialItem} with the requested fields
+     *
+     * @param item the item, with at least the requested fields set
+     * @return the grpc response
+     */
+    public PartialItem toPartialItem(Item item) {
+        PartialItem.Builder builder = PartialItem.newBuilder().setId(item.id.toString());
+        if (contains("stock")) {
+            builder.setStock(item.stock);
+        }
+        if (contains("max_stock")) {
+            builder.setMaxStock(item.maxStock);
+        }
+        if (contains("min_stock")) {
+            builder.setMinStock(item.minStock);
+        }
+        if (contains("created_at")) {
+            builder.setCreatedAt(item.createdAt.toInstant().toString());
+        }
+        if (contains("updated_at")) {
+            builder.setUpdatedAt(item.updatedAt.toInstant().toString());
+        }
+        return builder.build();
+    }
+
+    private static Date toDate(Object value) {
+        if (value == null || value instanceof Date) {
+            return (Date) value;
+        }
+        if (value instanceof LocalDateTime dateTime) {
+            return Timestamp.valueOf(dateTime);
+        }
+        if (value instanceof OffsetDateTime dateTime) {
+            return Date.from(dateTime.toInstant());
+        }
+        if (value instanceof Instant instant) {
+            return Date.from(instant);
+        }
+        throw new IllegalStateException("Unsupported timestamp " + value.getClass());
+    }
+}
@@ -0,0 +1,189 @@
+package com.open.su;
+
+import com.open.su.exceptions.ItemServiceException;
+import com.open.su.tracing.RequestTracer;
+import io.quarkus.hibernate.reactive.panache.Panache;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.jboss.logging.Logger;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Stock of the items in each location (for example a warehouse).
+ * <p>
+ * The stock of an item in a location is a row of the {@code item_location_stock} table. The table is hash partitioned
+ * by location, so writes to different locations do not contend and reads of a location only scan its partition. The
+ * table and its partitions are created by the {@code V2__item_location_stock} migration, the number of partitions
+ * ({@code stock-service.locations.partitions}) cannot change once the table exists. A location
+ * starts with no stock, and its stock is bounded by the minimum and maximum stock of the item. The stock of the item
+ * itself is the stock held outside any location, and is not part of the total stock of its locations.
+ * <p>
+ * The bounds apply to each location on its own, and to the stock of the item itself, not to a total: they are the
+ * capacity of a single location. Bounding a total would lock the row of the item on every location write, serializing
+ * the writes to all the locations of an item, which the partitioning by location is meant to avoid. The total stock of
+ * the locations of an item can therefore exceed its maximum stock.
+ */
+@ApplicationScoped
+public class ItemLocationStock {
+
+    private static final Logger LOGGER = Logger.getLogger(ItemLocationStock.class);
+
+    /**
+     * Maximum length of a location name, as defined by the {@code location} column
+     */
+    public static final int MAX_LOCATION_LENGTH = 64;
+
+    private final RequestTracer tracer;
+
+    @Inject
+    public ItemLocationStock(RequestTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Increment the stock of an item in a location, in the current transaction
+     *
+     * @param id        the id of the item
+     * @param location  the location
+     * @param increment the increment to apply to the stock (can be negative)
+     * @return a {@link Uni} with the stock of the location after the increment, or {@code null} if the item does not
+     * exist or the stock would leave its bounds, otherwise a failed {@link Uni}
+     */
+    public Uni<Long> increment(UUID id, String location, long increment) {
+        // A new location starts with no stock, so it is only created if the increment alone is within the bounds, the
+        // bounds of an existing location are checked on its locked row
+        return Panache.getSession()
+                .onItem().transformToUni(session -> session.createNativeQuery("""
+                                INSERT INTO item_location_stock (item_id, location, stock, updated_at)
+                                SELECT id, ?2, ?3, ?4 FROM item
+                                WHERE id = ?1 AND (?3 BETWEEN min_stock AND max_stock
+                                    OR EXISTS (SELECT 1 FROM item_location_stock WHERE item_id = ?1 AND location = ?2))
+                                ON CONFLICT (item_id, location) DO UPDATE
+                                SET stock = item_location_stock.stock + EXCLUDED.stock, updated_at = EXCLUDED.updated_at
+                                WHERE item_location_stock.stock + EXCLUDED.stock BETWEEN (SELECT min_stock FROM item WHERE id = ?1)
+                                                                                     AND (SELECT max_stock FROM item WHERE id = ?1)
+                                RETURNING stock""", Long.class)
+                        .setParameter(1, id)
+                        .setParameter(2, location)
+                        .setParameter(3, increment)
+                        .setParameter(4, new Date())
+                        .getResultList())
+                .onItem().invoke(() -> tracer.current().mark("location-update"))
+                .onFailure().transform(t -> {
+                    String message = "Failed to persist stock in location " + location + " for item with id " + id;
+                    LOGGER.error("[" + ItemService.Method.UPDATE + "] " + message, t);
+                    return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                })
+                .onItem().transform(stocks -> stocks.isEmpty() ? null : stocks.get(0));
+    }
+
+    /**
+     * Get the stock of an item in a location, in the current transaction
+     *
+     * @param id       the id of the item
+     * @param location the location
+     * @return a {@link Uni} with the stock of the location, or {@code null} if the item does not exist, otherwise a
+     * failed {@link Uni}
+     */
+    public Uni<Long> stock(UUID id, String location) {
+        return Panache.getSession()
+                .onItem().transformToUni(session -> session.createNativeQuery("""
+                                SELECT coalesce(item_location_stock.stock, 0) FROM item
+                                LEFT JOIN item_location_stock ON item_location_stock.item_id = item.id AND item_location_stock.location = ?2
+                                WHERE item.id = ?1""", Long.class)
+                        .setParameter(1, id)
+                        .setParameter(2, location)
+                        .getResultList())
+                .onItem().invoke(() -> tracer.current().mark("location-select"))
+                .onFailure().transform(t -> {
+                    String message = "Failed to get stock in location " + location + " for item with id " + id;
+                    LOGGER.error("[" + ItemService.Method.DETAILS + "] " + message, t);
+                    return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                })
+                .onItem().transform(stocks -> stocks.isEmpty() ? null : stocks.get(0));
+    }
+
+    /**
+     * Get the total stock of the locations of an item and its stock in each location, in the current transaction
+     * <p>
+     * The total (the stock of all the locations, without the stock of the item itself) is computed by the database.
+     * The row of the item is only selected to tell an item without locations from a missing item.
+     *
+     * @param id the id of the item
+     * @return a {@link Uni} with the stock, or {@code null} if the item does not exist, otherwise a failed {@link Uni}
+     */
+    public Uni<ItemStock> stocks(UUID id) {
+        return Panache.getSession()
+                .onItem().transformToUni(session -> session.createNativeQuery("""
+                                SELECT location, CAST(sum(stock) AS bigint), GROUPING(location) FROM (
+                                    SELECT CAST(NULL AS varchar) AS location, CAST(0 AS bigint) AS stock FROM item WHERE id = ?1
+                                    UNION ALL
+                                    SELECT location, stock FROM item_location_stock WHERE item_id = ?1
+                                ) AS stocks
+                                GROUP BY ROLLUP (location)
+                                ORDER BY GROUPING(location), location""", Object[].class)
+                        .setParameter(1, id)
+                        .getResultList())
+                .onItem().invoke(() -> tracer.current().mark("location-select"))
+                .onFailure().transform(t -> {
+                    String message = "Failed to get stock for item with id " + id;
+                    LOGGER.error("[" + ItemService.Method.DETAILS + "] " + message, t);
+                    return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                })
+                .onItem().transform(rows -> toItemStock(id, rows));
+    }
+
+    /**
+     * Delete the stock of items in all locations, in the current transaction
+     *
+     * @param ids the ids of the items
+     * @return a {@link Uni} of {@link Void}, otherwise a failed {@link Uni}
+     */
+    public Uni<Void> delete(Collection<UUID> ids) {
+        if (ids.isEmpty()) {
+            return Uni.createFrom().voidItem();
+        }
+        return Panache.getSession()
+                .onItem().transformToUni(session -> session.createNativeQuery("DELETE FROM item_location_stock WHERE item_id = ANY(?1)")
+                        .setParameter(1, ids.toArray(UUID[]::new))
+                        .executeUpdate())
+                .onItem().invoke(() -> tracer.current().mark("location-delete"))
+                .onFailure().transform(t -> {
+                    String message = "Failed to delete stock in locations for " + ids.size() + " items";
+                    LOGGER.error("[" + ItemService.Method.DELETE + "] " + message, t);
+                    return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                })
+                .replaceWithVoid();
+    }
+
+    /**
+     * Convert the rows of the rollup of the stocks of an item
+     *
+     * @param id   the id of the item
+     * @param rows the rows of the item itself and of its locations, then the row of the total
+     * @return the stock, or {@code null} if the item does not exist
+     */
+    static ItemStock toItemStock(UUID id, List<Object[]> rows) {
+        Long total = null;
+        boolean itemFound = false;
+        Map<String, Long> locations = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            Long stock = row[1] == null ? null : ((Number) row[1]).longValue();
+            if (((Number) row[2]).intValue() == 1) {
+                total = stock;
+            } else if (row[0] == null) {
+                itemFound = true;
+            } else {
+                locations.put((String) row[0], stock);
+            }
+        }
+        return itemFound ? new ItemStock(id, total, locations) : null;
+    }
+}
@@ -0,0 +1,222 @@
+package com.open.su;
+
+import com.open.su.exceptions.ItemServiceException;
+import io.grpc.Deadline;
+import io.quarkus.panache.common.Page;
+import io.quarkus.panache.common.Sort;
+import io.quarkus.reactive.datasource.ReactiveDataSource;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.RowSet;
+import io.vertx.mutiny.sqlclient.SqlClient;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Instance;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Routes item reads to the read-only datasource (for example a replica) when one is configured.
+ * <p>
+ * The read-only datasource is the reactive datasource named {@code read}. Reads of an item that was written through this
+ * instance less than {@code stock-service.read-routing.max-replica-lag} ago are kept on the primary, so a caller reads
+ * its own writes of an item as long as the replica lags behind by less than that. Lists of items are always read from
+ * the read-only datasource.
+ */
+@ApplicationScoped
+public class ItemReadRouter {
+
+    private static final Logger LOGGER = Logger.getLogger(ItemReadRouter.class);
+
+    private final PgPool readPool;
+    private final boolean enabled;
+    private final long maxReplicaLagNanos;
+    private final Map<UUID, Long> lastWrites = new ConcurrentHashMap<>();
+    private final Queue<Write> writes = new ConcurrentLinkedQueue<>();
+
+    @Inject
+    public ItemReadRouter(@ReactiveDataSource("read") Instance<PgPool> readPool,
+                          @ConfigProperty(name = "stock-service.read-routing.enabled", defaultValue = "false") boolean enabled,
+                          @ConfigProperty(name = "stock-service.read-routing.max-replica-lag", defaultValue = "1s") Duration maxReplicaLag) {
+        this(enabled && readPool.isResolvable() ? readPool.get() : null, maxReplicaLag);
+        if (enabled && !this.enabled) {
+            LOGGER.warn("Read routing is enabled but no \"read\" datasource is configured, reads stay on the primary");
+        }
+    }
+
+    /**
+     * Create a router to a read-only datasource
+     *
+     * @param readPool      the pool of the read-only datasource, or {@code null} to keep every read on the primary
+     * @param maxReplicaLag the time during which reads of a written item stay on the primary
+     */
+    ItemReadRouter(PgPool readPool, Duration maxReplicaLag) {
+        this.enabled = readPool != null;
+        this.readPool = readPool;
+        this.maxReplicaLagNanos = maxReplicaLag.toNanos();
+    }
+
+    /**
+     * Whether lists of items can be read from the read-only datasource
+     *
+     * @return {@code true} if lists can be read from the read-only datasource
+     */
+    public boolean routesList() {
+        return enabled;
+    }
+
+    /**
+     * Whether an item can be read from the read-only datasource without missing a recent write
+     *
+     * @param id the id of the item
+     * @return {@code true} if the item can be read from the read-only datasource
+     */
+    public boolean routes(UUID id) {
+        if (!enabled) {
+            return false;
+        }
+        Long lastWrite = lastWrites.get(id);
+        if (lastWrite == null) {
+            return true;
+        }
+        if (System.nanoTime() - lastWrite < maxReplicaLagNanos) {
+            return false;
+        }
+        lastWrites.remove(id, lastWrite);
+        return true;
+    }
+
+    /**
+     * Record a committed write, so that reads of the item stay on the primary until the replica caught up
+     *
+     * @param id the id of the written item
+     */
+    public void recordWrite(UUID id) {
+        recordWrites(List.of(id));
+    }
+
+    /**
+     * Record committed writes, so that reads of the items stay on the primary until the replica caught up
+     * <p>
+     * Writes are also queued in the order they are recorded, so the writes older than the replica lag are pruned from
+     * the head of the queue without scanning the writes that are still tracked.
+     *
+     * @param ids the ids of the written items
+     */
+    public void recordWrites(Collection<UUID> ids) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        ids.forEach(id -> {
+            lastWrites.put(id, now);
+            writes.add(new Write(id, now));
+        });
+        prune(now);
+    }
+
+    /**
+     * Get the number of items whose reads are kept on the primary, or were until recently
+     *
+     * @return the number of tracked writes
+     */
+    int trackedWrites() {
+        return lastWrites.size();
+    }
+
+    /**
+     * List items from the read-only datasource
+     *
+     * @param page     page number and size
+     * @param sort     sort by field and direction
+     * @param fields   the requested fields
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @return a {@link Uni} with the list of items
+     */
+    public Uni<List<Item>> listItems(Page page, Sort sort, ItemFields fields, Deadline deadline) {
+        String orderBy;
+        try {
+            orderBy = ItemFields.orderBy(sort);
+        } catch (ItemServiceException e) {
+            return Uni.createFrom().failure(e);
+        }
+        String sql = fields.select() + " FROM item" + orderBy + " LIMIT $1 OFFSET $2";
+        Tuple parameters = Tuple.of(page.size, (long) page.index * page.size);
+        return query(deadline, client -> client.preparedQuery(sql).execute(parameters))
+                .onItem().transform(rows -> {
+                    List<Item> items = new ArrayList<>(rows.size());
+                    rows.forEach(row -> items.add(fields.toItem(values(row))));
+                    return items;
+                });
+    }
+
+    /**
+     * Find an item by id from the read-only datasource
+     *
+     * @param id       the id of the item
+     * @param fields   the requested fields
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @return a {@link Uni} with the item, or {@code null} if it does not exist
+     */
+    public Uni<Item> findById(UUID id, ItemFields fields, Deadline deadline) {
+        return query(deadline, client -> client.preparedQuery(fields.select() + " FROM item WHERE id = $1").execute(Tuple.of(id)))
+                .onItem().transform(rows -> rows.iterator().hasNext() ? fields.toItem(values(rows.iterator().next())) : null);
+    }
+
+    /**
+     * Get the values of a row, in the order of its columns
+     *
+     * @param row the row
+     * @return the values
+     */
+    private static Object[] values(Row row) {
+        Object[] values = new Object[row.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = row.getValue(i);
+        }
+        return values;
+    }
+
+    private void prune(long now) {
+        Write oldest;
+        while ((oldest = writes.peek()) != null && now - oldest.time() >= maxReplicaLagNanos) {
+            // Only the expired write that was peeked is removed, a concurrent prune may already have removed it
+            if (writes.remove(oldest)) {
+                lastWrites.remove(oldest.id(), oldest.time());
+            }
+        }
+    }
+
+    /**
+     * Run a query on the read-only datasource, bounded by the time remaining before the deadline
+     *
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @param query    the query to run
+     * @return a {@link Uni} with the rows returned by the query
+     */
+    Uni<RowSet<Row>> query(Deadline deadline, Function<SqlClient, Uni<RowSet<Row>>> query) {
+        if (deadline == null) {
+            return query.apply(readPool);
+        }
+        return readPool.withTransaction(connection -> connection.preparedQuery("SELECT set_config('statement_timeout', $1, true)")
+                .execute(Tuple.of(Math.max(1, deadline.timeRemaining(TimeUnit.MILLISECONDS)) + "ms"))
+                .onItem().transformToUni(v -> query.apply(connection)));
+    }
+
+    private record Write(UUID id, long time) {
+    }
+}
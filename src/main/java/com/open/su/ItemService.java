@@ -1,23 +1,104 @@
 package com.open.su;
 
 import com.open.su.exceptions.ItemServiceException;
-import io.quarkus.hibernate.reactive.panache.common.WithTransaction;
+import com.open.su.tracing.RequestTracer;
+import io.grpc.Deadline;
+import io.quarkus.hibernate.reactive.panache.Panache;
 import io.quarkus.panache.common.Page;
 import io.quarkus.panache.common.Sort;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import io.smallrye.mutiny.tuples.Tuple2;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.pgclient.PgException;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @ApplicationScoped
-@WithTransaction
 public class ItemService {
 
     private static final Logger LOGGER = Logger.getLogger(ItemService.class);
 
+    /**
+     * SQLSTATE of a statement canceled by the database, for example by its statement timeout
+     */
+    private static final String QUERY_CANCELED = "57014";
+
+    private final ItemReadRouter readRouter;
+    private final ItemDetailsCache itemDetailsCache;
+    private final StockLedger stockLedger;
+    private final int deleteChunkSize;
+    private final Duration maxCoalescedWait;
+    private final SingleFlight<UUID, Item> itemDetailsFlights = new SingleFlight<>();
+    private final RequestTracer tracer;
+    private final ConnectionWaitMonitor connectionWaits;
+    private final ItemLocationStock itemLocationStock;
+    private final MemoryItemStore memoryStore;
+    private final StockReservations reservations;
+    private final Duration defaultReservationTtl;
+    private final Duration maxReservationTtl;
+    private final int releaseBatchSize;
+    private final PgPool pool;
+    private volatile long defaultStatementTimeout;
+
+    @Inject
+    public ItemService(ItemReadRouter readRouter, ItemDetailsCache itemDetailsCache, StockLedger stockLedger, RequestTracer tracer,
+                       ConnectionWaitMonitor connectionWaits, ItemLocationStock itemLocationStock, MemoryItemStore memoryStore,
+                       StockReservations reservations, PgPool pool,
+                       @ConfigProperty(name = "stock-service.delete-chunk-size", defaultValue = "1000") int deleteChunkSize,
+                       @ConfigProperty(name = "stock-service.read-coalescing.max-wait", defaultValue = "1s") Duration maxCoalescedWait,
+                       @ConfigProperty(name = "stock-service.reservations.default-ttl", defaultValue = "15m") Duration defaultReservationTtl,
+                       @ConfigProperty(name = "stock-service.reservations.max-ttl", defaultValue = "24h") Duration maxReservationTtl,
+                       @ConfigProperty(name = "stock-service.reservations.release-batch-size", defaultValue = "1000") int releaseBatchSize) {
+        this.readRouter = readRouter;
+        this.itemDetailsCache = itemDetailsCache;
+        this.stockLedger = stockLedger;
+        this.deleteChunkSize = deleteChunkSize;
+        this.maxCoalescedWait = maxCoalescedWait;
+        this.tracer = tracer;
+        this.connectionWaits = connectionWaits;
+        this.itemLocationStock = itemLocationStock;
+        this.memoryStore = memoryStore;
+        this.reservations = reservations;
+        this.defaultReservationTtl = defaultReservationTtl;
+        this.maxReservationTtl = maxReservationTtl;
+        this.releaseBatchSize = releaseBatchSize;
+        this.pool = pool;
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (memoryStore.enabled()) {
+            return;
+        }
+        // Reported in milliseconds whatever the unit it was set with, 0 if there is none
+        pool.query("SELECT setting FROM pg_settings WHERE name = 'statement_timeout'").execute()
+                .onItem().invoke(rows -> {
+                    defaultStatementTimeout = Long.parseLong(rows.iterator().next().getString("setting"));
+                    LOGGER.info("Default statement timeout of the database sessions is " + defaultStatementTimeout + "ms");
+                })
+                .onFailure().invoke(t -> LOGGER.warn("Failed to read the default statement timeout, every transaction with a deadline applies its own", t))
+                .onFailure().recoverWithNull()
+                .await().indefinitely();
+    }
+
     /**
      * List items with pagination and sorting
      *
@@ -26,13 +107,58 @@ public class ItemService {
      * @return a {@link Uni} with the list of items (with minimal information)
      */
     public Uni<List<Item>> listItems(Page page, Sort sort) {
+        return listItems(page, sort, null);
+    }
+
+    /**
+     * List items with pagination and sorting, bounded by the caller deadline
+     *
+     * @param page     page number and size
+     * @param sort     sort by field and direction
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @return a {@link Uni} with the list of items (with minimal information)
+     */
+    public Uni<List<Item>> listItems(Page page, Sort sort, Deadline deadline) {
+        return listItems(page, sort, ItemFields.ALL, deadline);
+    }
+
+    /**
+     * List items with pagination and sorting, selecting only the requested fields, bounded by the caller deadline
+     *
+     * @param page     page number and size
+     * @param sort     sort by field and direction
+     * @param fields   the requested fields
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @return a {@link Uni} with the list of items, with only the requested fields set
+     */
+    public Uni<List<Item>> listItems(Page page, Sort sort, ItemFields fields, Deadline deadline) {
         LOGGER.trace("Listing items with page " + page + " and sort " + sort);
-        return Item.<Item>findAll(sort).page(page).list()
+        if (memoryStore.enabled()) {
+            // Every field is already in memory, the mask only trims the response
+            return checkDeadline(deadline, Method.LIST)
+                    .onItem().transformToUni(v -> memoryStore.listItems(page, sort));
+        }
+        if (readRouter.routesList()) {
+            return checkDeadline(deadline, Method.LIST)
+                    .onItem().transformToUni(v -> readRouter.listItems(page, sort, fields, deadline)
+                            .onItem().invoke(() -> tracer.current().mark("replica-select"))
+                            .onFailure(t -> !(t instanceof ItemServiceException)).transform(t -> {
+                                String message = "Failed to list items from the read datasource";
+                                LOGGER.error("[" + Method.LIST + "] " + message, t);
+                                return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                            })
+                            .onFailure(ItemService::isStatementTimeout).transform(t -> statementTimeout(t, Method.LIST)));
+        }
+        if (!fields.isAll()) {
+            return inTransaction(deadline, Method.LIST, () -> selectItems(fields, Method.LIST,
+                    fields.select() + " FROM item" + ItemFields.orderBy(sort) + " LIMIT ?1 OFFSET ?2", page.size, (long) page.index * page.size));
+        }
+        return inTransaction(deadline, Method.LIST, () -> Item.<Item>findAll(sort).page(page).list()
                 .onFailure().transform(t -> {
                     String message = "Failed to list items";
                     LOGGER.error("[" + Method.LIST + "] " + message, t);
                     return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
-                });
+                }));
     }
 
     /**
@@ -42,8 +168,104 @@ public class ItemService {
      * @return a {@link Uni} with the item details
      */
     public Uni<Item> getItemDetails(UUID id) {
+        return getItemDetails(id, null);
+    }
+
+    /**
+     * Get item details, bounded by the caller deadline
+     * <p>
+     * Concurrent calls for the same item share a single lookup, unless a write to the item was committed since the
+     * lookup started. A call only joins a lookup bounded by a deadline at least as late as its own, see
+     * {@link SingleFlight}, and waits for it until its own deadline. Calls without a deadline wait at most
+     * {@code stock-service.read-coalescing.max-wait}, setting it to 0 disables the sharing.
+     *
+     * @param id       the id of the item
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @return a {@link Uni} with the item details
+     */
+    public Uni<Item> getItemDetails(UUID id, Deadline deadline) {
         LOGGER.trace("Getting item details for item with id " + id);
-        return findItemOrFail(id, Method.DETAILS);
+        if (maxCoalescedWait.isZero() || memoryStore.enabled()) {
+            return loadItemDetails(id, deadline);
+        }
+        return checkDeadline(deadline, Method.DETAILS)
+                .onItem().transformToUni(remaining -> {
+                    long wait = remaining != null ? remaining : maxCoalescedWait.toMillis();
+                    Deadline lookupDeadline = deadline != null ? deadline : Deadline.after(wait, TimeUnit.MILLISECONDS);
+                    return itemDetailsFlights.run(id, lookupDeadline, sharedDeadline -> loadItemDetails(id, sharedDeadline))
+                            .ifNoItem().after(Duration.ofMillis(wait)).failWith(() -> {
+                                String message = "Timed out waiting for the details of item with id " + id;
+                                LOGGER.debug("[" + Method.DETAILS + "] " + message);
+                                return ItemServiceException.DEADLINE_EXCEEDED.withMessage(message);
+                            });
+                });
+    }
+
+    /**
+     * Get item details, selecting only the requested fields, bounded by the caller deadline
+     * <p>
+     * Lookups of a subset of the fields are not shared between concurrent calls.
+     *
+     * @param id       the id of the item
+     * @param fields   the requested fields
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @return a {@link Uni} with the item details, with only the requested fields set
+     */
+    public Uni<Item> getItemDetails(UUID id, ItemFields fields, Deadline deadline) {
+        if (fields.isAll()) {
+            return getItemDetails(id, deadline);
+        }
+        LOGGER.trace("Getting item details for item with id " + id);
+        return loadItemDetails(id, fields, deadline);
+    }
+
+    /**
+     * Load item details from the read datasource if possible, otherwise from the primary
+     *
+     * @param id       the id of the item
+     * @param deadline the deadline of the lookup, or {@code null} if there is none
+     * @return a {@link Uni} with the item details
+     */
+    Uni<Item> loadItemDetails(UUID id, Deadline deadline) {
+        return loadItemDetails(id, ItemFields.ALL, deadline);
+    }
+
+    /**
+     * Load the requested fields of an item from the read datasource if possible, otherwise from the primary
+     *
+     * @param id       the id of the item
+     * @param fields   the requested fields
+     * @param deadline the deadline of the lookup, or {@code null} if there is none
+     * @return a {@link Uni} with the item details, with only the requested fields set
+     */
+    Uni<Item> loadItemDetails(UUID id, ItemFields fields, Deadline deadline) {
+        if (memoryStore.enabled()) {
+            return checkDeadline(deadline, Method.DETAILS)
+                    .onItem().transformToUni(v -> memoryStore.getItem(id))
+                    .onItem().ifNull().failWith(() -> itemNotFound(id, Method.DETAILS));
+        }
+        if (readRouter.routes(id)) {
+            return checkDeadline(deadline, Method.DETAILS)
+                    .onItem().transformToUni(v -> readRouter.findById(id, fields, deadline)
+                            .onItem().invoke(() -> tracer.current().mark("replica-select"))
+                            .onFailure(t -> !(t instanceof ItemServiceException)).transform(t -> {
+                                String message = "Failed to get item with id " + id + " from the read datasource";
+                                LOGGER.error("[" + Method.DETAILS + "] " + message, t);
+                                return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                            })
+                            .onFailure(ItemService::isStatementTimeout).transform(t -> statementTimeout(t, Method.DETAILS))
+                            .onItem().ifNull().failWith(() -> {
+                                String message = "Item with id " + id + " does not exist";
+                                LOGGER.debug("[" + Method.DETAILS + "] " + message);
+                                return ItemServiceException.NOT_FOUND.withMessage(message);
+                            }));
+        }
+        if (!fields.isAll()) {
+            return inTransaction(deadline, Method.DETAILS, () -> selectItems(fields, Method.DETAILS, fields.select() + " FROM item WHERE id = ?1", id))
+                    .onItem().transform(items -> items.isEmpty() ? null : items.get(0))
+                    .onItem().ifNull().failWith(() -> itemNotFound(id, Method.DETAILS));
+        }
+        return inTransaction(deadline, Method.DETAILS, () -> findItemOrFail(id, Method.DETAILS));
     }
 
     /**
@@ -53,21 +275,30 @@ public class ItemService {
      * @return a {@link Uni} with the id of the created item
      */
     public Uni<UUID> createItem(Item item) {
+        return createItem(item, null);
+    }
+
+    /**
+     * Create an item, bounded by the caller deadline
+     *
+     * @param item     the item to create
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @return a {@link Uni} with the id of the created item
+     */
+    public Uni<UUID> createItem(Item item, Deadline deadline) {
         LOGGER.trace("Creating item " + item);
+        if (memoryStore.enabled()) {
+            return checkItemProperties(item)
+                    .onItem().transformToUni(v -> checkDeadline(deadline, Method.CREATE))
+                    .onItem().transformToUni(v -> memoryStore.createItem(item))
+                    .onItem().invoke(() -> afterWrite(item.id))
+                    .onItem().transform(e -> e.id);
+        }
         return checkItemProperties(item)
-                .onItem().transformToUni(v -> Item.<Item>findById(item.id)
-                        .onFailure().transform(t -> {
-                            String message = "Failed to get item with id " + item.id;
-                            LOGGER.error("[" + Method.CREATE + "] " + message, t);
-                            return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
-                        })
-                        .onItem().ifNotNull().failWith(() -> {
-                            String message = "Item with id " + item.id + " already exists";
-                            LOGGER.debug("[" + Method.CREATE + "] " + message);
-                            return ItemServiceException.CONFLICT.withMessage(message);
-                        })
-                        .onItem().transformToUni(e -> persistItemOrFail(item, Method.CREATE))
-                        .onItem().transform(e -> e == null ? null : e.id));
+                .onItem().transformToUni(v -> inTransaction(deadline, Method.CREATE, () -> insertItemOrFail(item)
+                        .call(e -> stockLedger.record(e.id, e.stock, e.stock, StockMovement.Kind.CREATE)))
+                        .onItem().invoke(() -> afterWrite(item.id))
+                        .onItem().transform(e -> e.id));
     }
 
     /**
@@ -77,19 +308,30 @@ public class ItemService {
      * @return a {@link Uni} with the id of the updated item
      */
     public Uni<UUID> updateItem(Item item) {
+        return updateItem(item, null);
+    }
+
+    /**
+     * Update an item, bounded by the caller deadline
+     *
+     * @param item     the item to update
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @return a {@link Uni} with the id of the updated item
+     */
+    public Uni<UUID> updateItem(Item item, Deadline deadline) {
         LOGGER.trace("Updating item " + item);
+        if (memoryStore.enabled()) {
+            return checkItemProperties(item)
+                    .onItem().transformToUni(v -> checkDeadline(deadline, Method.UPDATE))
+                    .onItem().transformToUni(v -> memoryStore.updateItem(item))
+                    .onItem().invoke(() -> afterWrite(item.id))
+                    .onItem().transform(e -> item.id);
+        }
         return checkItemProperties(item)
-                .onItem().transformToUni(v -> findItemOrFail(item.id, Method.UPDATE)
-                        .onItem().transformToUni(existingItem -> {
-                            if (item.minStock != null && item.minStock > existingItem.maxStock) {
-                                return Uni.createFrom().failure(ItemServiceException.INVALID_ARGUMENT.withMessage("Minimum stock must be less than maximum stock"));
-                            }
-                            if (item.maxStock != null && item.maxStock < existingItem.minStock) {
-                                return Uni.createFrom().failure(ItemServiceException.INVALID_ARGUMENT.withMessage("Maximum stock must be greater than minimum stock"));
-                            }
-                            return persistItemOrFail(existingItem.update(item), Method.UPDATE);
-                        })
-                        .onItem().transform(e -> e == null ? null : e.id));
+                .onItem().transformToUni(v -> inTransaction(deadline, Method.UPDATE, () -> updateItemOrFail(item)
+                        .call(stocks -> stockLedger.record(item.id, stocks.getItem2() - stocks.getItem1(), stocks.getItem2(), StockMovement.Kind.UPDATE)))
+                        .onItem().invoke(() -> afterWrite(item.id))
+                        .onItem().transform(stocks -> item.id));
     }
 
     /**
@@ -100,19 +342,222 @@ public class ItemService {
      * @return a {@link Uni} with the id of the updated item
      */
     public Uni<Tuple2<UUID, Long>> incrementItemStock(UUID id, Long increment) {
+        return incrementItemStock(id, increment, null);
+    }
+
+    /**
+     * Increment an item stock, bounded by the caller deadline
+     *
+     * @param id        the id of the item to update
+     * @param increment the increment to apply to the stock (can be negative)
+     * @param deadline  the caller deadline, or {@code null} if there is none
+     * @return a {@link Uni} with the id of the updated item
+     */
+    public Uni<Tuple2<UUID, Long>> incrementItemStock(UUID id, Long increment, Deadline deadline) {
         LOGGER.trace("Incrementing stock by " + increment + " for item with id " + id);
-        return findItemOrFail(id, Method.UPDATE)
-                .onItem().transformToUni(existingItem -> {
-                    if (existingItem.stock + increment < existingItem.minStock) {
-                        return Uni.createFrom().failure(ItemServiceException.INVALID_ARGUMENT.withMessage("Stock cannot be less than minimum stock"));
-                    }
-                    if (existingItem.stock + increment > existingItem.maxStock) {
-                        return Uni.createFrom().failure(ItemServiceException.INVALID_ARGUMENT.withMessage("Stock cannot be greater than maximum stock"));
+        if (memoryStore.enabled()) {
+            return checkDeadline(deadline, Method.UPDATE)
+                    .onItem().transformToUni(v -> memoryStore.incrementItemStock(id, increment))
+                    .onItem().invoke(() -> afterWrite(id))
+                    .onItem().transform(e -> Tuple2.of(id, e.stock));
+        }
+        return inTransaction(deadline, Method.UPDATE, () -> incrementItemStockOrFail(id, increment))
+                .onItem().invoke(() -> afterWrite(id))
+                .onItem().transform(stock -> Tuple2.of(id, stock));
+    }
+
+    /**
+     * Increment the stock of an item in a location, bounded by the caller deadline
+     * <p>
+     * The stock of each location is bounded by the minimum and maximum stock of the item, and each increment is recorded
+     * in the ledger with its location. Without a location, the stock of the item itself is incremented.
+     *
+     * @param id        the id of the item to update
+     * @param location  the location, or {@code null} for the item itself
+     * @param increment the increment to apply to the stock (can be negative)
+     * @param deadline  the caller deadline, or {@code null} if there is none
+     * @return a {@link Uni} with the id of the updated item and the stock of the location
+     */
+    public Uni<Tuple2<UUID, Long>> incrementItemStock(UUID id, String location, Long increment, Deadline deadline) {
+        if (location == null) {
+            return incrementItemStock(id, increment, deadline);
+        }
+        LOGGER.trace("Incrementing stock by " + increment + " in location " + location + " for item with id " + id);
+        if (memoryStore.enabled()) {
+            return Uni.createFrom().failure(unsupportedInMemory("Locations", Method.UPDATE));
+        }
+        return validateLocation(location, Method.UPDATE)
+                .onItem().transformToUni(v -> inTransaction(deadline, Method.UPDATE, () -> itemLocationStock.increment(id, location, increment)
+                        .onItem().ifNull().switchTo(() -> findItemOrFail(id, Method.UPDATE)
+                                // Nothing was updated, find out why (off the hot path)
+                                .onItem().transformToUni(existingItem -> itemLocationStock.stock(id, location)
+                                        .onItem().transformToUni(stock -> Uni.createFrom().failure(stock + increment < existingItem.minStock
+                                                ? ItemServiceException.INVALID_ARGUMENT.withMessage("Stock cannot be less than minimum stock")
+                                                : ItemServiceException.INVALID_ARGUMENT.withMessage("Stock cannot be greater than maximum stock")))))
+                        .call(stock -> stockLedger.record(id, location, increment, stock, StockMovement.Kind.INCREMENT))))
+                .onItem().invoke(() -> LOGGER.debug("[" + Method.UPDATE + "] Persisted stock in location " + location + " for item with id " + id))
+                .onItem().transform(stock -> Tuple2.of(id, stock));
+    }
+
+    /**
+     * Get the stock of an item in a location, or the total stock of its locations and its stock in each location,
+     * bounded by the caller deadline
+     *
+     * @param id       the id of the item
+     * @param location the location, or {@code null} for the total stock of the locations
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @return a {@link Uni} with the stock
+     */
+    public Uni<ItemStock> getItemStock(UUID id, String location, Deadline deadline) {
+        if (memoryStore.enabled()) {
+            return Uni.createFrom().failure(unsupportedInMemory("Locations", Method.DETAILS));
+        }
+        if (location == null) {
+            return inTransaction(deadline, Method.DETAILS, () -> itemLocationStock.stocks(id))
+                    .onItem().ifNull().failWith(() -> itemNotFound(id, Method.DETAILS));
+        }
+        return validateLocation(location, Method.DETAILS)
+                .onItem().transformToUni(v -> inTransaction(deadline, Method.DETAILS, () -> itemLocationStock.stock(id, location)))
+                .onItem().ifNull().failWith(() -> itemNotFound(id, Method.DETAILS))
+                .onItem().transform(stock -> new ItemStock(id, stock, Map.of(location, stock)));
+    }
+
+    /**
+     * Reserve stock of an item, bounded by the caller deadline
+     * <p>
+     * The quantity is held against the stock of the item until the reservation is committed, released or expires: the
+     * stock minus the reserved quantity cannot go below the minimum stock, but the stock itself only changes when the
+     * reservation is committed.
+     *
+     * @param id       the id of the item
+     * @param quantity the quantity to reserve
+     * @param ttl      the time before the reservation expires, or {@code null} for the default
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @return a {@link Uni} with the reservation
+     */
+    public Uni<Reservation> reserveItemStock(UUID id, long quantity, Duration ttl, Deadline deadline) {
+        LOGGER.trace("Reserving " + quantity + " of stock for item with id " + id);
+        if (memoryStore.enabled()) {
+            return Uni.createFrom().failure(unsupportedInMemory("Reservations", Method.UPDATE));
+        }
+        if (quantity <= 0) {
+            return Uni.createFrom().failure(ItemServiceException.INVALID_ARGUMENT.withMessage("Quantity must be greater than 0"));
+        }
+        if (ttl != null && (ttl.isNegative() || ttl.compareTo(maxReservationTtl) > 0)) {
+            return Uni.createFrom().failure(ItemServiceException.INVALID_ARGUMENT.withMessage("Time to live must be between 0 and " + maxReservationTtl));
+        }
+        UUID reservationId = UUID.randomUUID();
+        Duration timeToLive = ttl == null || ttl.isZero() ? defaultReservationTtl : ttl;
+        Date expiresAt = new Date(System.currentTimeMillis() + timeToLive.toMillis());
+        return inTransaction(deadline, Method.UPDATE, () -> reservations.reserve(reservationId, id, quantity, expiresAt)
+                .onItem().ifNull().switchTo(() -> findItemOrFail(id, Method.UPDATE)
+                        // Nothing was reserved, the item exists so the reservation would break its minimum stock
+                        .onItem().transformToUni(existingItem -> Uni.createFrom().<Long>failure(
+                                ItemServiceException.INVALID_ARGUMENT.withMessage("Stock cannot be less than minimum stock")))))
+                .onItem().transform(stock -> new Reservation(reservationId, id, quantity, stock, expiresAt))
+                .onItem().invoke(reservation -> {
+                    reservations.track(reservationId, expiresAt);
+                    afterWrite(id);
+                    LOGGER.debug("[" + Method.UPDATE + "] Reserved " + quantity + " of stock for item with id " + id);
+                });
+    }
+
+    /**
+     * Commit a reservation before it expires, bounded by the caller deadline
+     * <p>
+     * The reserved quantity is taken out of the stock of the item.
+     *
+     * @param reservationId the id of the reservation
+     * @param deadline      the caller deadline, or {@code null} if there is none
+     * @return a {@link Uni} with the id of the item of the reservation
+     */
+    public Uni<UUID> commitReservation(UUID reservationId, Deadline deadline) {
+        LOGGER.trace("Committing reservation " + reservationId);
+        if (memoryStore.enabled()) {
+            return Uni.createFrom().failure(unsupportedInMemory("Reservations", Method.UPDATE));
+        }
+        return inTransaction(deadline, Method.UPDATE, () -> reservations.commit(reservationId))
+                .onItem().ifNull().failWith(() -> reservationNotFound(reservationId))
+                .onItem().invoke(this::afterWrite);
+    }
+
+    /**
+     * Release a reservation, so its quantity is no longer held against the stock of the item, bounded by the caller
+     * deadline
+     *
+     * @param reservationId the id of the reservation
+     * @param deadline      the caller deadline, or {@code null} if there is none
+     * @return a {@link Uni} with the id of the item of the reservation and its stock minus its reserved quantity after
+     * the release, or {@code null} if the item no longer exists
+     */
+    public Uni<Tuple2<UUID, Long>> releaseReservation(UUID reservationId, Deadline deadline) {
+        LOGGER.trace("Releasing reservation " + reservationId);
+        if (memoryStore.enabled()) {
+            return Uni.createFrom().failure(unsupportedInMemory("Reservations", Method.UPDATE));
+        }
+        return inTransaction(deadline, Method.UPDATE, () -> reservations.release(List.of(reservationId), false))
+                .onItem().invoke(released -> afterWrites(released.keySet()))
+                .onItem().transform(released -> released.entrySet().stream()
+                        .findFirst()
+                        .map(entry -> Tuple2.of(entry.getKey(), entry.getValue().getItem2()))
+                        .orElse(null))
+                .onItem().ifNull().failWith(() -> reservationNotFound(reservationId));
+    }
+
+    /**
+     * Release the reservations that have expired, in batches of {@code stock-service.reservations.release-batch-size},
+     * each batch with a single statement in its own transaction
+     * <p>
+     * A batch that fails is retried at the next tick.
+     *
+     * @return a {@link Uni} of {@link Void}
+     */
+    @Scheduled(every = "${stock-service.reservations.tick:1s}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    Uni<Void> releaseExpiredReservations() {
+        List<UUID> expired = reservations.expired();
+        if (expired.isEmpty()) {
+            return Uni.createFrom().voidItem();
+        }
+        return Multi.createFrom().iterable(expired).group().intoLists().of(releaseBatchSize)
+                .onItem().transformToUniAndConcatenate(batch -> inTransaction(null, Method.UPDATE, () -> reservations.release(batch, true))
+                        .onItem().invoke(released -> {
+                            afterWrites(released.keySet());
+                            LOGGER.debug("[" + Method.UPDATE + "] Released expired reservations of " + released.size() + " items");
+                        })
+                        .onFailure().invoke(t -> {
+                            LOGGER.error("[" + Method.UPDATE + "] Failed to release " + batch.size() + " expired reservations", t);
+                            reservations.retry(batch);
+                        })
+                        .onFailure().recoverWithNull())
+                .collect().last()
+                .replaceWithVoid();
+    }
+
+    /**
+     * Release the reservations that have expired without being released by the instance tracking them, for example
+     * because it went away, in batches of {@code stock-service.reservations.release-batch-size} until none is left
+     * <p>
+     * Reservations being released concurrently are skipped. A batch that fails is retried at the next sweep.
+     *
+     * @return a {@link Uni} of {@link Void}
+     */
+    @Scheduled(every = "${stock-service.reservations.sweep-interval:1m}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    Uni<Void> sweepExpiredReservations() {
+        if (memoryStore.enabled()) {
+            return Uni.createFrom().voidItem();
+        }
+        return Uni.createFrom().deferred(() -> inTransaction(null, Method.UPDATE, () -> reservations.releaseExpired(releaseBatchSize)))
+                .onItem().invoke(released -> {
+                    afterWrites(released.keySet());
+                    if (!released.isEmpty()) {
+                        LOGGER.info("[" + Method.UPDATE + "] Swept expired reservations of " + released.size() + " items");
                     }
-                    existingItem.stock += increment;
-                    return persistItemOrFail(existingItem, Method.UPDATE);
                 })
-                .onItem().transform(e -> e == null ? null : Tuple2.of(e.id, e.stock));
+                .repeat().until(Map::isEmpty)
+                .collect().last()
+                .onFailure().invoke(t -> LOGGER.error("[" + Method.UPDATE + "] Failed to sweep expired reservations", t))
+                .onFailure().recoverWithNull()
+                .replaceWithVoid();
     }
 
     /**
@@ -122,8 +567,25 @@ public class ItemService {
      * @return a {@link Uni} of Void
      */
     public Uni<Void> deleteItem(UUID id) {
+        return deleteItem(id, null);
+    }
+
+    /**
+     * Delete an item, bounded by the caller deadline
+     *
+     * @param id       the id of the item to delete
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @return a {@link Uni} of Void
+     */
+    public Uni<Void> deleteItem(UUID id, Deadline deadline) {
         LOGGER.trace("Deleting item with id " + id);
-        return findItemOrFail(id, Method.DELETE)
+        if (memoryStore.enabled()) {
+            return checkDeadline(deadline, Method.DELETE)
+                    .onItem().transformToUni(v -> memoryStore.deleteItem(id))
+                    .onItem().invoke(() -> afterWrite(id))
+                    .replaceWithVoid();
+        }
+        return inTransaction(deadline, Method.DELETE, () -> findItemOrFail(id, Method.DELETE)
                 .onItem().transformToUni(existingItem ->
                         existingItem.delete()
                                 .onFailure().transform(t -> {
@@ -131,9 +593,202 @@ public class ItemService {
                                     LOGGER.error("[" + Method.DELETE + "] " + message, t);
                                     return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
                                 })
-                                .onItem().invoke(() -> LOGGER.debug("[" + Method.DELETE + "] " + "Deleted item with id " + id)));
+                                .onItem().invoke(() -> LOGGER.debug("[" + Method.DELETE + "] " + "Deleted item with id " + id))
+                                .call(() -> itemLocationStock.delete(List.of(id)))
+                                .call(() -> reservations.delete(List.of(id)))
+                                .call(() -> stockLedger.record(id, -existingItem.stock, 0L, StockMovement.Kind.DELETE))))
+                .onItem().invoke(() -> afterWrite(id));
+    }
+
+    /**
+     * Delete items in bulk
+     * <p>
+     * Ids are deleted in chunks, each chunk with a single statement in its own transaction, so a large deletion does
+     * not hold one long transaction.
+     *
+     * @param ids      the ids of the items to delete
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @return a {@link Uni} with the number of deleted items and the ids that did not match any item
+     */
+    public Uni<Tuple2<Long, List<UUID>>> deleteItems(Multi<UUID> ids, Deadline deadline) {
+        if (memoryStore.enabled()) {
+            return deleteItemsInMemory(ids, deadline);
+        }
+        return ids.group().intoLists().of(deleteChunkSize)
+                .onItem().transformToUniAndConcatenate(chunk -> {
+                    LOGGER.trace("Deleting " + chunk.size() + " items");
+                    return inTransaction(deadline, Method.DELETE, () -> deleteItemsOrFail(chunk)
+                            .call(deleted -> itemLocationStock.delete(deleted.keySet()))
+                            .call(deleted -> reservations.delete(deleted.keySet()))
+                            .call(stockLedger::recordDeletes))
+                            .onItem().invoke(deleted -> afterWrites(deleted.keySet()))
+                            .onItem().transform(deleted -> Tuple2.of(deleted.keySet(), chunk));
+                })
+                // An id repeated in a later chunk than the one deleting it is not missing
+                .collect().in(() -> Tuple2.of(new HashSet<UUID>(), new LinkedHashSet<UUID>()), (result, chunk) -> {
+                    result.getItem1().addAll(chunk.getItem1());
+                    chunk.getItem2().stream().filter(id -> !result.getItem1().contains(id)).forEach(result.getItem2()::add);
+                })
+                .onItem().transform(result -> Tuple2.of((long) result.getItem1().size(), (List<UUID>) new ArrayList<>(result.getItem2())));
+    }
+
+    /**
+     * Delete items in bulk from the in-memory storage, one at a time
+     *
+     * @param ids      the ids of the items to delete
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @return a {@link Uni} with the number of deleted items and the ids that did not match any item
+     */
+    Uni<Tuple2<Long, List<UUID>>> deleteItemsInMemory(Multi<UUID> ids, Deadline deadline) {
+        return ids.onItem().transformToUniAndConcatenate(id -> checkDeadline(deadline, Method.DELETE)
+                        .onItem().transformToUni(v -> memoryStore.deleteItem(id))
+                        .onItem().invoke(() -> afterWrite(id))
+                        .onItem().transform(deleted -> Tuple2.of(id, true))
+                        .onFailure(t -> t instanceof ItemServiceException e && e.getType() == ItemServiceException.Type.NOT_FOUND)
+                        .recoverWithItem(Tuple2.of(id, false)))
+                .collect().in(() -> Tuple2.of(new HashSet<UUID>(), new LinkedHashSet<UUID>()), (result, deleted) -> {
+                    if (deleted.getItem2()) {
+                        result.getItem1().add(deleted.getItem1());
+                    } else if (!result.getItem1().contains(deleted.getItem1())) {
+                        result.getItem2().add(deleted.getItem1());
+                    }
+                })
+                .onItem().transform(result -> Tuple2.of((long) result.getItem1().size(), (List<UUID>) new ArrayList<>(result.getItem2())));
+    }
+
+    /**
+     * Notify the read path that a write to an item was committed
+     *
+     * @param id the id of the written item
+     */
+    void afterWrite(UUID id) {
+        itemDetailsFlights.forget(id);
+        readRouter.recordWrite(id);
+        itemDetailsCache.invalidate(id);
     }
 
+    /**
+     * Notify the read path that writes to several items were committed
+     *
+     * @param ids the ids of the written items
+     */
+    void afterWrites(Collection<UUID> ids) {
+        ids.forEach(itemDetailsFlights::forget);
+        readRouter.recordWrites(ids);
+        itemDetailsCache.invalidateAll(ids);
+    }
+
+    /**
+     * Run some work in a transaction bounded by the caller deadline.
+     * <p>
+     * The work is skipped if the deadline has already expired, either before the transaction is opened or once a
+     * connection has been acquired. Otherwise, the remaining time becomes the statement timeout of the transaction, so
+     * the database gives up on queries whose response nobody will read, and the caller gets a
+     * {@link ItemServiceException.Type#DEADLINE_EXCEEDED} failure.
+     *
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @param method   the context in which the work is performed (for logging purposes)
+     * @param work     the work to perform in the transaction
+     * @return a {@link Uni} with the result of the work, otherwise a failed {@link Uni}
+     */
+    <T> Uni<T> inTransaction(Deadline deadline, Method method, Supplier<Uni<T>> work) {
+        return checkDeadline(deadline, method)
+                .onItem().transformToUni(v -> {
+                    long connectionStart = System.nanoTime();
+                    return Panache.withTransaction(() -> {
+                        connectionWaits.record(System.nanoTime() - connectionStart);
+                        tracer.current().mark("connection");
+                        return applyStatementTimeout(deadline, method)
+                                .onItem().transformToUni(timeout -> work.get());
+                    });
+                })
+                .onFailure(ItemService::isStatementTimeout).transform(t -> statementTimeout(t, method))
+                .onItem().invoke(() -> tracer.current().mark("commit"));
+    }
+
+    /**
+     * Whether a failure was caused by the statement timeout of the transaction
+     *
+     * @param failure the failure
+     * @return {@code true} if a statement was canceled by the database because of the timeout
+     */
+    static boolean isStatementTimeout(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof PgException pgException && QUERY_CANCELED.equals(pgException.getSqlState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Build the failure of a statement canceled by the statement timeout applied from the caller deadline
+     *
+     * @param failure the failure of the statement
+     * @param method  the context in which the statement was run (for logging purposes)
+     * @return the failure
+     */
+    ItemServiceException statementTimeout(Throwable failure, Method method) {
+        String message = "Deadline expired while waiting for the database";
+        LOGGER.debug("[" + method + "] " + message);
+        return ItemServiceException.DEADLINE_EXCEEDED.withCause(failure).withMessage(message);
+    }
+
+    /**
+     * Check that a deadline has not expired yet
+     *
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @param method   the context in which the check is performed (for logging purposes)
+     * @return a {@link Uni} with the remaining time in milliseconds (or {@code null} if there is no deadline), otherwise
+     * a failed {@link Uni}
+     */
+    Uni<Long> checkDeadline(Deadline deadline, Method method) {
+        return Uni.createFrom().deferred(() -> {
+            if (deadline == null) {
+                return Uni.createFrom().nullItem();
+            }
+            long remaining = deadline.timeRemaining(TimeUnit.MILLISECONDS);
+            if (remaining <= 0) {
+                String message = "Deadline expired before reaching the database";
+                LOGGER.debug("[" + method + "] " + message);
+                return Uni.createFrom().failure(ItemServiceException.DEADLINE_EXCEEDED.withMessage(message));
+            }
+            return Uni.createFrom().item(remaining);
+        });
+    }
+
+    /**
+     * Bound every statement of the current transaction by the time remaining before a deadline
+     * <p>
+     * Setting the timeout costs a round trip to the database, so it is skipped when the default statement timeout of the
+     * database sessions already expires first.
+     *
+     * @param deadline the caller deadline, or {@code null} if there is none
+     * @param method   the context in which the timeout is applied (for logging purposes)
+     * @return a {@link Uni} with the timeout bounding the statements in milliseconds (or {@code null} if there is no
+     * deadline), otherwise a failed {@link Uni}
+     */
+    Uni<Long> applyStatementTimeout(Deadline deadline, Method method) {
+        long defaultTimeout = defaultStatementTimeout;
+        return checkDeadline(deadline, method)
+                .onItem().ifNotNull().transformToUni(remaining -> {
+                    if (defaultTimeout > 0 && remaining >= defaultTimeout) {
+                        return Uni.createFrom().item(defaultTimeout);
+                    }
+                    return Panache.getSession()
+                            .onItem().transformToUni(session -> session.createNativeQuery("SELECT set_config('statement_timeout', ?1, true)", String.class)
+                                    .setParameter(1, remaining + "ms")
+                                    .getSingleResult())
+                            .onFailure().transform(t -> {
+                                String message = "Failed to apply statement timeout";
+                                LOGGER.error("[" + method + "] " + message, t);
+                                return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                            })
+                            .onItem().transform(v -> remaining);
+                });
+    }
+
+
     /**
      * Find an item by id or fail
      *
@@ -143,33 +798,280 @@ public class ItemService {
      */
     Uni<Item> findItemOrFail(UUID id, Method method) {
         return Item.<Item>findById(id)
+                .onItem().invoke(() -> tracer.current().mark("select"))
                 .onFailure().transform(t -> {
                     String message = "Failed to get item with id " + id;
                     LOGGER.error("[" + method + "] " + message, t);
                     return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
                 })
-                .onItem().ifNull().failWith(() -> {
-                    String message = "Item with id " + id + " does not exist";
-                    LOGGER.debug("[" + method + "] " + message);
-                    return ItemServiceException.NOT_FOUND.withMessage(message);
-                });
+                .onItem().ifNull().failWith(() -> itemNotFound(id, method));
     }
 
     /**
-     * Persist an item or fail
+     * Select the requested fields of items with a native query
      *
-     * @param item   the item to persist
-     * @param method the context in which the persist is performed (for logging purposes)
-     * @return a {@link Uni} with the persisted item, otherwise a failed {@link Uni}
+     * @param fields     the requested fields, selected by the query in the same order
+     * @param method     the context in which the items are selected (for logging purposes)
+     * @param sql        the query
+     * @param parameters the positional parameters of the query
+     * @return a {@link Uni} with the items, with only the requested fields set, otherwise a failed {@link Uni}
      */
-    Uni<Item> persistItemOrFail(Item item, Method method) {
-        return item.<Item>persist()
+    Uni<List<Item>> selectItems(ItemFields fields, Method method, String sql, Object... parameters) {
+        return Panache.getSession()
+                .onItem().transformToUni(session -> {
+                    var query = session.createNativeQuery(sql);
+                    for (int i = 0; i < parameters.length; i++) {
+                        query.setParameter(i + 1, parameters[i]);
+                    }
+                    return query.getResultList();
+                })
+                .onItem().invoke(() -> tracer.current().mark("select"))
                 .onFailure().transform(t -> {
-                    String message = "Failed to persist stock for item with id " + item.id;
+                    String message = "Failed to select items";
                     LOGGER.error("[" + method + "] " + message, t);
                     return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
                 })
-                .onItem().ifNotNull().invoke(existingItem -> LOGGER.debug("[" + method + "] Persisted item with id " + existingItem.id));
+                .onItem().transform(results -> results.stream().map(fields::toItem).toList());
+    }
+
+    /**
+     * Build the failure of a request on an item that does not exist
+     *
+     * @param id     the id of the item
+     * @param method the context in which the item was looked up (for logging purposes)
+     * @return the failure
+     */
+    ItemServiceException itemNotFound(UUID id, Method method) {
+        String message = "Item with id " + id + " does not exist";
+        LOGGER.debug("[" + method + "] " + message);
+        return ItemServiceException.NOT_FOUND.withMessage(message);
+    }
+
+    /**
+     * Build the failure of a request on a reservation that does not exist
+     *
+     * @param reservationId the id of the reservation
+     * @return the failure
+     */
+    ItemServiceException reservationNotFound(UUID reservationId) {
+        String message = "Reservation with id " + reservationId + " does not exist or has expired";
+        LOGGER.debug("[" + Method.UPDATE + "] " + message);
+        return ItemServiceException.NOT_FOUND.withMessage(message);
+    }
+
+    /**
+     * Build the failure of an operation that needs the database when the items are stored in memory
+     *
+     * @param feature the feature of the operation
+     * @param method  the context of the operation (for logging purposes)
+     * @return the failure
+     */
+    ItemServiceException unsupportedInMemory(String feature, Method method) {
+        String message = feature + " are not supported by the in-memory storage";
+        LOGGER.debug("[" + method + "] " + message);
+        return ItemServiceException.UNIMPLEMENTED.withMessage(message);
+    }
+
+    /**
+     * Check that a location name is valid
+     *
+     * @param location the location
+     * @param method   the context in which the check is performed (for logging purposes)
+     * @return a {@link Uni} of {@link Void}, otherwise a failed {@link Uni}
+     */
+    Uni<Void> validateLocation(String location, Method method) {
+        if (location.isBlank() || location.length() > ItemLocationStock.MAX_LOCATION_LENGTH) {
+            String message = "Location must be between 1 and " + ItemLocationStock.MAX_LOCATION_LENGTH + " characters";
+            LOGGER.debug("[" + method + "] " + message);
+            return Uni.createFrom().failure(ItemServiceException.INVALID_ARGUMENT.withMessage(message));
+        }
+        return Uni.createFrom().voidItem();
+    }
+
+    /**
+     * Insert an item in a single statement, or fail if an item with the same id already exists
+     * <p>
+     * An item created without stock starts full, at its maximum stock.
+     *
+     * @param item the item to insert
+     * @return a {@link Uni} with the inserted item, otherwise a failed {@link Uni}
+     */
+    Uni<Item> insertItemOrFail(Item item) {
+        Date now = new Date();
+        return Panache.getSession()
+                .onItem().transformToUni(session -> session.createNativeQuery("""
+                                INSERT INTO item (id, stock, max_stock, min_stock, created_at, updated_at)
+                                VALUES (?1, coalesce(CAST(?2 AS bigint), ?3), ?3, ?4, ?5, ?5)
+                                ON CONFLICT (id) DO NOTHING
+                                RETURNING id, stock, max_stock, min_stock, reserved, created_at, updated_at""", Item.class)
+                        .setParameter(1, item.id)
+                        .setParameter(2, item.stock)
+                        .setParameter(3, item.maxStock)
+                        .setParameter(4, item.minStock == null ? 0L : item.minStock)
+                        .setParameter(5, now)
+                        .getResultList())
+                .onFailure().transform(t -> {
+                    String message = "Failed to persist item with id " + item.id;
+                    LOGGER.error("[" + Method.CREATE + "] " + message, t);
+                    return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                })
+                .onItem().transformToUni(items -> {
+                    if (items.isEmpty()) {
+                        String message = "Item with id " + item.id + " already exists";
+                        LOGGER.debug("[" + Method.CREATE + "] " + message);
+                        return Uni.createFrom().failure(ItemServiceException.CONFLICT.withMessage(message));
+                    }
+                    tracer.current().mark("insert");
+                    LOGGER.debug("[" + Method.CREATE + "] Persisted item with id " + item.id);
+                    return Uni.createFrom().item(items.get(0));
+                });
+    }
+
+    /**
+     * Update the non-null properties of an item in a single statement, or fail if the item does not exist or if the
+     * update would break its minimum and maximum stock bounds
+     * <p>
+     * The bounds are checked against the stock after the update, so lowering the maximum stock below the stock or
+     * raising the minimum stock above it is rejected like setting the stock out of the bounds. The stock minus the
+     * reserved quantity must stay above the minimum stock.
+     *
+     * @param item the properties to update
+     * @return a {@link Uni} with the stock of the item before and after the update, otherwise a failed {@link Uni}
+     */
+    Uni<Tuple2<Long, Long>> updateItemOrFail(Item item) {
+        return Panache.getSession()
+                .onItem().transformToUni(session -> session.createNativeQuery("""
+                                UPDATE item
+                                SET stock = coalesce(CAST(?2 AS bigint), item.stock),
+                                    max_stock = coalesce(CAST(?3 AS bigint), item.max_stock),
+                                    min_stock = coalesce(CAST(?4 AS bigint), item.min_stock),
+                                    updated_at = ?5
+                                FROM (SELECT id, stock FROM item WHERE id = ?1 FOR UPDATE) AS previous
+                                WHERE item.id = previous.id
+                                  AND coalesce(CAST(?4 AS bigint), item.min_stock) <= coalesce(CAST(?3 AS bigint), item.max_stock)
+                                  AND coalesce(CAST(?2 AS bigint), item.stock) - item.reserved >= coalesce(CAST(?4 AS bigint), item.min_stock)
+                                  AND coalesce(CAST(?2 AS bigint), item.stock) <= coalesce(CAST(?3 AS bigint), item.max_stock)
+                                RETURNING previous.stock, item.stock""", Object[].class)
+                        .setParameter(1, item.id)
+                        .setParameter(2, item.stock)
+                        .setParameter(3, item.maxStock)
+                        .setParameter(4, item.minStock)
+                        .setParameter(5, new Date())
+                        .getResultList())
+                .onFailure().transform(t -> {
+                    String message = "Failed to persist item with id " + item.id;
+                    LOGGER.error("[" + Method.UPDATE + "] " + message, t);
+                    return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                })
+                .onItem().transformToUni(rows -> {
+                    if (rows.isEmpty()) {
+                        // Nothing was updated, find out why (off the hot path)
+                        return findItemOrFail(item.id, Method.UPDATE)
+                                .onItem().transformToUni(existingItem -> Uni.createFrom().failure(outOfBounds(item, existingItem)));
+                    }
+                    tracer.current().mark("update");
+                    LOGGER.debug("[" + Method.UPDATE + "] Persisted item with id " + item.id);
+                    Object[] stocks = rows.get(0);
+                    return Uni.createFrom().item(Tuple2.of(((Number) stocks[0]).longValue(), ((Number) stocks[1]).longValue()));
+                });
+    }
+
+    /**
+     * Explain why an update was rejected by its bounds check
+     *
+     * @param item         the properties to update
+     * @param existingItem the item before the update
+     * @return the {@link ItemServiceException.Type#INVALID_ARGUMENT} failure
+     */
+    static ItemServiceException outOfBounds(Item item, Item existingItem) {
+        long minStock = item.minStock != null ? item.minStock : existingItem.minStock;
+        long maxStock = item.maxStock != null ? item.maxStock : existingItem.maxStock;
+        long stock = item.stock != null ? item.stock : existingItem.stock;
+        long reserved = existingItem.reserved != null ? existingItem.reserved : 0L;
+        String message;
+        if (minStock > maxStock) {
+            message = item.minStock != null && item.minStock > existingItem.maxStock
+                    ? "Minimum stock must be less than maximum stock"
+                    : "Maximum stock must be greater than minimum stock";
+        } else if (stock - reserved < minStock) {
+            message = item.stock != null ? "Stock cannot be less than minimum stock" : "Minimum stock cannot be greater than stock";
+        } else {
+            message = item.stock != null ? "Stock cannot be greater than maximum stock" : "Maximum stock cannot be less than stock";
+        }
+        LOGGER.debug("[" + Method.UPDATE + "] " + message);
+        return ItemServiceException.INVALID_ARGUMENT.withMessage(message);
+    }
+
+    /**
+     * Increment the stock of an item and record the movement in the stock ledger in a single statement, or fail if the
+     * item does not exist or if the stock would leave its minimum and maximum bounds
+     * <p>
+     * The bounds are checked by the statement itself, so concurrent increments of the same item cannot lose updates. The
+     * reserved quantity of the item is held above the minimum stock.
+     *
+     * @param id        the id of the item
+     * @param increment the increment to apply to the stock (can be negative)
+     * @return a {@link Uni} with the stock of the item after the increment, otherwise a failed {@link Uni}
+     */
+    Uni<Long> incrementItemStockOrFail(UUID id, Long increment) {
+        return Panache.getSession()
+                .onItem().transformToUni(session -> session.createNativeQuery("""
+                                WITH incremented AS (
+                                    UPDATE item SET stock = stock + ?2, updated_at = ?3
+                                    WHERE id = ?1 AND stock + ?2 - reserved >= min_stock AND stock + ?2 <= max_stock
+                                    RETURNING stock
+                                ), recorded AS (
+                                    INSERT INTO stock_movement (item_id, delta, stock, kind)
+                                    SELECT ?1, ?2, stock, ?4 FROM incremented
+                                )
+                                SELECT stock FROM incremented""", Long.class)
+                        .setParameter(1, id)
+                        .setParameter(2, increment)
+                        .setParameter(3, new Date())
+                        .setParameter(4, StockMovement.Kind.INCREMENT.name())
+                        .getResultList())
+                .onFailure().transform(t -> {
+                    String message = "Failed to persist stock for item with id " + id;
+                    LOGGER.error("[" + Method.UPDATE + "] " + message, t);
+                    return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                })
+                .onItem().transformToUni(stocks -> {
+                    if (stocks.isEmpty()) {
+                        // Nothing was updated, find out why (off the hot path)
+                        return findItemOrFail(id, Method.UPDATE)
+                                .onItem().transformToUni(existingItem -> Uni.createFrom().failure(existingItem.stock - existingItem.reserved + increment < existingItem.minStock
+                                        ? ItemServiceException.INVALID_ARGUMENT.withMessage("Stock cannot be less than minimum stock")
+                                        : ItemServiceException.INVALID_ARGUMENT.withMessage("Stock cannot be greater than maximum stock")));
+                    }
+                    tracer.current().mark("update");
+                    LOGGER.debug("[" + Method.UPDATE + "] Persisted item with id " + id);
+                    return Uni.createFrom().item(stocks.get(0));
+                });
+    }
+
+    /**
+     * Delete items in a single statement
+     *
+     * @param ids the ids of the items to delete
+     * @return a {@link Uni} with the stock of each deleted item before its deletion, otherwise a failed {@link Uni}
+     */
+    Uni<Map<UUID, Long>> deleteItemsOrFail(List<UUID> ids) {
+        return Panache.getSession()
+                .onItem().transformToUni(session -> session.createNativeQuery("DELETE FROM item WHERE id = ANY(?1) RETURNING id, stock", Object[].class)
+                        .setParameter(1, ids.toArray(UUID[]::new))
+                        .getResultList())
+                .onFailure().transform(t -> {
+                    String message = "Failed to delete " + ids.size() + " items";
+                    LOGGER.error("[" + Method.DELETE + "] " + message, t);
+                    return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                })
+                .onItem().transform(rows -> {
+                    tracer.current().mark("delete");
+                    Map<UUID, Long> deleted = new HashMap<>(rows.size());
+                    rows.forEach(row -> deleted.put((UUID) row[0], ((Number) row[1]).longValue()));
+                    LOGGER.debug("[" + Method.DELETE + "] Deleted " + deleted.size() + " items");
+                    return deleted;
+                });
     }
 
     Uni<Void> checkItemProperties(Item item) {
@@ -0,0 +1,30 @@
+package com.open.su;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Stock of an item across its locations.
+ *
+ * @param id        the id of the item
+ * @param stock     the total stock of the locations, or the stock of the requested location
+ * @param locations the stock in each location
+ * @see ItemLocationStock
+ */
+public record ItemStock(UUID id, long stock, Map<String, Long> locations) {
+
+    /**
+     * Convert the stock to a {@link GetItemStockResponse}
+     *
+     * @return the grpc response
+     */
+    public GetItemStockResponse toGetItemStockResponse() {
+        GetItemStockResponse.Builder builder = GetItemStockResponse.newBuilder()
+                .setId(this.id.toString())
+                .setStock(this.stock);
+        locations.forEach((location, stock) -> builder.addLocations(LocationStock.newBuilder()
+                .setLocation(location)
+                .setStock(stock)));
+        return builder.build();
+    }
+}
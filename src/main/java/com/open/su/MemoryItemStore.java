@@ -0,0 +1,315 @@
+package com.open.su;
+
+import com.open.su.exceptions.ItemServiceException;
+import com.open.su.tracing.RequestTrace;
+import com.open.su.tracing.RequestTracer;
+import io.quarkus.panache.common.Page;
+import io.quarkus.panache.common.Sort;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * In-memory storage of the items, used by {@link ItemService} instead of the database when
+ * {@code stock-service.storage} is {@code memory}.
+ * <p>
+ * Items are held by a {@link MemoryItemTable} and every mutation is appended to a {@link WriteAheadLog} in
+ * {@code stock-service.memory.directory}. A mutation is visible as soon as it is applied, and its result is returned once
+ * its record is durable: a read can see a mutation that a crash then loses. The table is periodically dumped to a snapshot, after which the older segments of the log are
+ * deleted, so a restart loads the latest snapshot and replays only the segments that follow it. Locations and the
+ * stock ledger need the database and are not available with this storage.
+ */
+@ApplicationScoped
+public class MemoryItemStore {
+
+    private static final Logger LOGGER = Logger.getLogger(MemoryItemStore.class);
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final boolean fsync;
+    private final int initialCapacity;
+    private final RequestTracer tracer;
+    private volatile WriteAheadLog log;
+    private volatile MemoryItemTable table;
+
+    @Inject
+    public MemoryItemStore(RequestTracer tracer,
+                           @ConfigProperty(name = "stock-service.storage", defaultValue = "postgres") String storage,
+                           @ConfigProperty(name = "stock-service.memory.directory", defaultValue = "data/stock") Path directory,
+                           @ConfigProperty(name = "stock-service.memory.segment-records", defaultValue = "1048576") int recordsPerSegment,
+                           @ConfigProperty(name = "stock-service.memory.fsync", defaultValue = "true") boolean fsync,
+                           @ConfigProperty(name = "stock-service.memory.initial-capacity", defaultValue = "65536") int initialCapacity) {
+        this.tracer = tracer;
+        this.enabled = "memory".equals(storage);
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+        this.fsync = fsync;
+        this.initialCapacity = initialCapacity;
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        log = new WriteAheadLog(directory, recordsPerSegment, fsync);
+        table = new MemoryItemTable(log, initialCapacity);
+        long firstSegment = latestSnapshot().map(this::loadSnapshot).orElse(0L);
+        long replayed = WriteAheadLog.replay(directory, firstSegment, table::replay);
+        LOGGER.info("Recovered " + table.size() + " items (" + replayed + " log records replayed) in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        if (replayed > 0) {
+            snapshot();
+        }
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    /**
+     * Whether the items are stored in memory instead of the database
+     *
+     * @return {@code true} if the items are stored in memory
+     */
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * List items with pagination and sorting
+     * <p>
+     * Every item is sorted to get a page, which is fine for the size of the catalogs this storage is meant for.
+     *
+     * @param page page number and size
+     * @param sort sort by field and direction
+     * @return a {@link Uni} with the list of items
+     */
+    public Uni<List<Item>> listItems(Page page, Sort sort) {
+        return Uni.createFrom().item(() -> {
+            Comparator<Item> comparator = comparator(sort);
+            Stream<Item> items = table.list().stream();
+            if (comparator != null) {
+                items = items.sorted(comparator);
+            }
+            List<Item> result = items.skip((long) page.index * page.size).limit(page.size).toList();
+            tracer.current().mark("memory");
+            return result;
+        });
+    }
+
+    /**
+     * Get an item
+     *
+     * @param id the id of the item
+     * @return a {@link Uni} with the item, or {@code null} if it does not exist
+     */
+    public Uni<Item> getItem(UUID id) {
+        return Uni.createFrom().item(() -> {
+            Item item = table.get(id);
+            tracer.current().mark("memory");
+            return item;
+        });
+    }
+
+    /**
+     * Create an item
+     *
+     * @param item the item, with all its values set
+     * @return a {@link Uni} with the created item, otherwise a failed {@link Uni}
+     */
+    public Uni<Item> createItem(Item item) {
+        return write(() -> table.create(item, System.currentTimeMillis()));
+    }
+
+    /**
+     * Update the non-null properties of an item
+     *
+     * @param item the properties to update
+     * @return a {@link Uni} with the item after the update, otherwise a failed {@link Uni}
+     */
+    public Uni<Item> updateItem(Item item) {
+        return write(() -> table.update(item, System.currentTimeMillis()));
+    }
+
+    /**
+     * Increment the stock of an item, within its minimum and maximum stock
+     *
+     * @param id        the id of the item
+     * @param increment the increment (can be negative)
+     * @return a {@link Uni} with the item after the increment, otherwise a failed {@link Uni}
+     */
+    public Uni<Item> incrementItemStock(UUID id, long increment) {
+        return write(() -> table.increment(id, increment, System.currentTimeMillis()));
+    }
+
+    /**
+     * Delete an item
+     *
+     * @param id the id of the item
+     * @return a {@link Uni} with the item before its deletion, otherwise a failed {@link Uni}
+     */
+    public Uni<Item> deleteItem(UUID id) {
+        return write(() -> table.delete(id));
+    }
+
+    /**
+     * Dump the items to a new snapshot, then delete the log segments and snapshots it replaces
+     */
+    @Scheduled(every = "${stock-service.memory.snapshot-interval:5m}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    public void snapshot() {
+        if (log == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        // Mutations logged after the roll are replayed on top of the snapshot, even if the snapshot already has them
+        long firstSegment = log.roll();
+        Path snapshot = snapshotPath(firstSegment);
+        Path temporary = directory.resolve(snapshot.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            table.dump(buffer -> {
+                try {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            channel.force(true);
+            Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+            // The rename must be durable before the files it replaces are deleted
+            try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                directoryChannel.force(true);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.error("Failed to write snapshot " + snapshot, e);
+            return;
+        }
+        snapshots().filter(old -> old < firstSegment).forEach(old -> {
+            try {
+                Files.deleteIfExists(snapshotPath(old));
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete snapshot " + old, e);
+            }
+        });
+        log.deleteBefore(firstSegment);
+        LOGGER.debug("Snapshotted " + table.size() + " items in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+    }
+
+    /**
+     * Apply a mutation and wait for its record to be durable
+     *
+     * @param mutation the mutation, which throws an {@link ItemServiceException} if it cannot be applied
+     * @return a {@link Uni} with the item of the mutation, emitted on the context of the caller, or on the default
+     * executor without one
+     */
+    Uni<Item> write(Supplier<MemoryItemTable.Mutation> mutation) {
+        return Uni.createFrom().deferred(() -> {
+            Context context = Vertx.currentContext();
+            RequestTrace trace = tracer.current();
+            MemoryItemTable.Mutation applied = mutation.get();
+            trace.mark("memory");
+            return Uni.createFrom().completionStage(() -> log.sync(applied.sequence()))
+                    .onItem().invoke(() -> trace.mark("log-sync"))
+                    // Never emitted on the flusher thread, which would run the rest of the pipeline of the caller
+                    .emitOn(context == null ? Infrastructure.getDefaultExecutor() : task -> context.runOnContext(v -> task.run()))
+                    .replaceWith(applied.item());
+        }).onFailure(t -> !(t instanceof ItemServiceException)).transform(t -> {
+            String message = "Failed to log the mutation of an item";
+            LOGGER.error(message, t);
+            return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+        });
+    }
+
+    /**
+     * Build the comparator of a sort, restricted to the item fields
+     *
+     * @param sort the sort, or {@code null}
+     * @return the comparator, or {@code null} if there is no sort
+     */
+    static Comparator<Item> comparator(Sort sort) {
+        if (sort == null) {
+            return null;
+        }
+        Comparator<Item> comparator = null;
+        for (Sort.Column column : sort.getColumns()) {
+            Comparator<Item> next = switch (column.getName()) {
+                // Same order as the uuid type of the database
+                case "id" -> Comparator.comparing((Item item) -> item.id.toString());
+                case "stock" -> Comparator.comparing((Item item) -> item.stock);
+                case "maxStock" -> Comparator.comparing((Item item) -> item.maxStock);
+                case "minStock" -> Comparator.comparing((Item item) -> item.minStock);
+                case "createdAt" -> Comparator.comparing((Item item) -> item.createdAt);
+                case "updatedAt" -> Comparator.comparing((Item item) -> item.updatedAt);
+                default -> throw ItemServiceException.INVALID_ARGUMENT.withMessage("Cannot sort items by " + column.getName());
+            };
+            if (column.getDirection() == Sort.Direction.Descending) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        return comparator;
+    }
+
+    private long loadSnapshot(long firstSegment) {
+        Path snapshot = snapshotPath(firstSegment);
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            WriteAheadLog.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), table::replay);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load snapshot " + snapshot, e);
+        }
+        return firstSegment;
+    }
+
+    private Optional<Long> latestSnapshot() {
+        return snapshots().max(Long::compare);
+    }
+
+    private Stream<Long> snapshots() {
+        if (!Files.isDirectory(directory)) {
+            return Stream.empty();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length())))
+                    .toList()
+                    .stream();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list snapshots", e);
+        }
+    }
+
+    private Path snapshotPath(long firstSegment) {
+        return directory.resolve(SNAPSHOT_PREFIX + String.format("%016d", firstSegment) + SNAPSHOT_SUFFIX);
+    }
+}
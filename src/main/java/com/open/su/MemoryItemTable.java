@@ -0,0 +1,457 @@
+package com.open.su;
+
+import com.open.su.exceptions.ItemServiceException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Items held in memory, in primitive arrays indexed by slot.
+ * <p>
+ * Ids are mapped to slots by an open addressing hash table on the two halves of the id, so lookups do not allocate.
+ * Creations and deletions change the index under the write lock of the table. Other mutations and reads take its read
+ * lock and the lock of the stripe of the item, so mutations of items of different stripes run in parallel. Each mutation
+ * is appended to the {@link WriteAheadLog} and applied under the same stripe lock, so the log replays mutations of an
+ * item in the order they were applied.
+ */
+final class MemoryItemTable {
+
+    private static final int STRIPES = 64;
+    private static final int EMPTY = -1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object[] stripes = new Object[STRIPES];
+    private final WriteAheadLog log;
+
+    // Item values by slot
+    private long[] msb;
+    private long[] lsb;
+    private long[] stock;
+    private long[] minStock;
+    private long[] maxStock;
+    private long[] createdAt;
+    private long[] updatedAt;
+    private boolean[] used;
+    private int slots;
+    private int[] freeSlots;
+    private int freeCount;
+
+    // Open addressing index from id to slot
+    private long[] indexMsb;
+    private long[] indexLsb;
+    private int[] indexSlots;
+    private int size;
+
+    /**
+     * Create an empty table
+     *
+     * @param log             the log of the mutations
+     * @param initialCapacity the number of items the table holds before growing
+     */
+    MemoryItemTable(WriteAheadLog log, int initialCapacity) {
+        this.log = log;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, initialCapacity - 1)) << 1);
+        msb = new long[capacity];
+        lsb = new long[capacity];
+        stock = new long[capacity];
+        minStock = new long[capacity];
+        maxStock = new long[capacity];
+        createdAt = new long[capacity];
+        updatedAt = new long[capacity];
+        used = new boolean[capacity];
+        freeSlots = new int[capacity];
+        indexMsb = new long[capacity * 2];
+        indexLsb = new long[capacity * 2];
+        indexSlots = new int[capacity * 2];
+        Arrays.fill(indexSlots, EMPTY);
+    }
+
+    /**
+     * Get an item
+     *
+     * @param id the id of the item
+     * @return the item, or {@code null} if it does not exist
+     */
+    Item get(UUID id) {
+        lock.readLock().lock();
+        try {
+            int slot = find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (slot == EMPTY) {
+                return null;
+            }
+            synchronized (stripe(slot)) {
+                return toItem(slot);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get all the items
+     *
+     * @return the items, in no particular order
+     */
+    List<Item> list() {
+        List<Item> items = new ArrayList<>();
+        forEach(items::add);
+        return items;
+    }
+
+    /**
+     * Visit all the items, a batch of slots at a time so that creations and deletions are not blocked for long
+     *
+     * @param consumer the visitor of the items
+     */
+    void forEach(Consumer<Item> consumer) {
+        int batch = 4096;
+        for (int start = 0; ; start += batch) {
+            List<Item> items = new ArrayList<>(batch);
+            lock.readLock().lock();
+            try {
+                if (start >= slots) {
+                    return;
+                }
+                for (int slot = start; slot < Math.min(slots, start + batch); slot++) {
+                    synchronized (stripe(slot)) {
+                        if (used[slot]) {
+                            items.add(toItem(slot));
+                        }
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            items.forEach(consumer);
+        }
+    }
+
+    /**
+     * Get the number of items
+     *
+     * @return the number of items
+     */
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Create an item
+     *
+     * @param item the item, with all its values set except the minimum stock, which defaults to 0, and the stock, which
+     *             defaults to the maximum stock
+     * @param now  the time of the creation, in milliseconds since the epoch
+     * @return the mutation, otherwise throws an {@link ItemServiceException}
+     */
+    Mutation create(Item item, long now) {
+        long idMsb = item.id.getMostSignificantBits();
+        long idLsb = item.id.getLeastSignificantBits();
+        lock.writeLock().lock();
+        try {
+            if (find(idMsb, idLsb) != EMPTY) {
+                throw ItemServiceException.CONFLICT.withMessage("Item with id " + item.id + " already exists");
+            }
+            long newStock = item.stock == null ? item.maxStock : item.stock;
+            long newMinStock = item.minStock == null ? 0L : item.minStock;
+            // Logged first, so that an item the log rejects is not left half created
+            long sequence = log.append(WriteAheadLog.PUT, idMsb, idLsb, newStock, newMinStock, item.maxStock, now, now);
+            int slot = allocate(idMsb, idLsb);
+            set(slot, idMsb, idLsb, newStock, newMinStock, item.maxStock, now, now);
+            return new Mutation(sequence, toItem(slot));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Update the non-null properties of an item, within the minimum and maximum stock resulting from the update
+     *
+     * @param item the properties to update
+     * @param now  the time of the update, in milliseconds since the epoch
+     * @return the mutation, with the item after the update, otherwise throws an {@link ItemServiceException}
+     */
+    Mutation update(Item item, long now) {
+        lock.readLock().lock();
+        try {
+            int slot = findOrFail(item.id);
+            synchronized (stripe(slot)) {
+                long newMinStock = item.minStock != null ? item.minStock : minStock[slot];
+                long newMaxStock = item.maxStock != null ? item.maxStock : maxStock[slot];
+                long newStock = item.stock != null ? item.stock : stock[slot];
+                if (newMinStock > newMaxStock || newStock < newMinStock || newStock > newMaxStock) {
+                    throw ItemService.outOfBounds(item, toItem(slot));
+                }
+                return put(slot, newStock, newMinStock, newMaxStock, now);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Increment the stock of an item, within its minimum and maximum stock
+     *
+     * @param id        the id of the item
+     * @param increment the increment (can be negative)
+     * @param now       the time of the update, in milliseconds since the epoch
+     * @return the mutation, with the item after the update, otherwise throws an {@link ItemServiceException}
+     */
+    Mutation increment(UUID id, long increment, long now) {
+        lock.readLock().lock();
+        try {
+            int slot = findOrFail(id);
+            synchronized (stripe(slot)) {
+                long newStock = stock[slot] + increment;
+                if (newStock < minStock[slot]) {
+                    throw ItemServiceException.INVALID_ARGUMENT.withMessage("Stock cannot be less than minimum stock");
+                }
+                if (newStock > maxStock[slot]) {
+                    throw ItemServiceException.INVALID_ARGUMENT.withMessage("Stock cannot be greater than maximum stock");
+                }
+                return put(slot, newStock, minStock[slot], maxStock[slot], now);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Delete an item
+     *
+     * @param id the id of the item
+     * @return the mutation, with the item before its deletion, otherwise throws an {@link ItemServiceException}
+     */
+    Mutation delete(UUID id) {
+        lock.writeLock().lock();
+        try {
+            int slot = findOrFail(id);
+            Item deleted = toItem(slot);
+            long sequence = log.append(WriteAheadLog.DELETE, msb[slot], lsb[slot], 0, 0, 0, 0, 0);
+            remove(slot);
+            return new Mutation(sequence, deleted);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Apply a record of the log, without logging it again
+     */
+    void replay(byte type, long idMsb, long idLsb, long itemStock, long itemMinStock, long itemMaxStock, long itemCreatedAt, long itemUpdatedAt) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(idMsb, idLsb);
+            if (type == WriteAheadLog.DELETE) {
+                if (slot != EMPTY) {
+                    remove(slot);
+                }
+                return;
+            }
+            if (slot == EMPTY) {
+                slot = allocate(idMsb, idLsb);
+            }
+            set(slot, idMsb, idLsb, itemStock, itemMinStock, itemMaxStock, itemCreatedAt, itemUpdatedAt);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write a {@link WriteAheadLog#PUT} record of every item, a batch of slots at a time
+     *
+     * @param writer the writer of the batches of records
+     */
+    void dump(Consumer<ByteBuffer> writer) {
+        int batch = 4096;
+        ByteBuffer buffer = ByteBuffer.allocate(batch * WriteAheadLog.RECORD_SIZE);
+        for (int start = 0; ; start += batch) {
+            buffer.clear();
+            int offset = 0;
+            lock.readLock().lock();
+            try {
+                if (start >= slots) {
+                    return;
+                }
+                for (int slot = start; slot < Math.min(slots, start + batch); slot++) {
+                    synchronized (stripe(slot)) {
+                        if (used[slot]) {
+                            WriteAheadLog.write(buffer, offset, WriteAheadLog.PUT, msb[slot], lsb[slot], stock[slot], minStock[slot], maxStock[slot], createdAt[slot], updatedAt[slot]);
+                            offset += WriteAheadLog.RECORD_SIZE;
+                        }
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            buffer.limit(offset);
+            writer.accept(buffer);
+        }
+    }
+
+    private Mutation put(int slot, long newStock, long newMinStock, long newMaxStock, long now) {
+        long sequence = log.append(WriteAheadLog.PUT, msb[slot], lsb[slot], newStock, newMinStock, newMaxStock, createdAt[slot], now);
+        stock[slot] = newStock;
+        minStock[slot] = newMinStock;
+        maxStock[slot] = newMaxStock;
+        updatedAt[slot] = now;
+        return new Mutation(sequence, toItem(slot));
+    }
+
+    private void set(int slot, long idMsb, long idLsb, long itemStock, long itemMinStock, long itemMaxStock, long itemCreatedAt, long itemUpdatedAt) {
+        synchronized (stripe(slot)) {
+            msb[slot] = idMsb;
+            lsb[slot] = idLsb;
+            stock[slot] = itemStock;
+            minStock[slot] = itemMinStock;
+            maxStock[slot] = itemMaxStock;
+            createdAt[slot] = itemCreatedAt;
+            updatedAt[slot] = itemUpdatedAt;
+            used[slot] = true;
+        }
+    }
+
+    private Item toItem(int slot) {
+        Item item = new Item();
+        item.id = new UUID(msb[slot], lsb[slot]);
+        item.stock = stock[slot];
+        item.minStock = minStock[slot];
+        item.maxStock = maxStock[slot];
+        item.createdAt = new Date(createdAt[slot]);
+        item.updatedAt = new Date(updatedAt[slot]);
+        return item;
+    }
+
+    private Object stripe(int slot) {
+        return stripes[slot & (STRIPES - 1)];
+    }
+
+    private int findOrFail(UUID id) {
+        int slot = find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (slot == EMPTY) {
+            throw ItemServiceException.NOT_FOUND.withMessage("Item with id " + id + " does not exist");
+        }
+        return slot;
+    }
+
+    /**
+     * Allocate a slot to an id, under the write lock
+     */
+    private int allocate(long idMsb, long idLsb) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slots == used.length) {
+                grow();
+            }
+            slot = slots++;
+        }
+        insert(idMsb, idLsb, slot);
+        size++;
+        return slot;
+    }
+
+    /**
+     * Free the slot of an item, under the write lock
+     */
+    private void remove(int slot) {
+        synchronized (stripe(slot)) {
+            used[slot] = false;
+        }
+        int position = position(msb[slot], lsb[slot]);
+        // Backward shift deletion, so that lookups never stop at a hole of their probe sequence
+        int mask = indexSlots.length - 1;
+        int hole = position;
+        for (int next = (hole + 1) & mask; indexSlots[next] != EMPTY; next = (next + 1) & mask) {
+            int home = hash(indexMsb[next], indexLsb[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                indexMsb[hole] = indexMsb[next];
+                indexLsb[hole] = indexLsb[next];
+                indexSlots[hole] = indexSlots[next];
+                hole = next;
+            }
+        }
+        indexSlots[hole] = EMPTY;
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+
+    private void grow() {
+        int capacity = used.length * 2;
+        msb = Arrays.copyOf(msb, capacity);
+        lsb = Arrays.copyOf(lsb, capacity);
+        stock = Arrays.copyOf(stock, capacity);
+        minStock = Arrays.copyOf(minStock, capacity);
+        maxStock = Arrays.copyOf(maxStock, capacity);
+        createdAt = Arrays.copyOf(createdAt, capacity);
+        updatedAt = Arrays.copyOf(updatedAt, capacity);
+        used = Arrays.copyOf(used, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+        long[] oldMsb = indexMsb;
+        long[] oldLsb = indexLsb;
+        int[] oldSlots = indexSlots;
+        indexMsb = new long[capacity * 2];
+        indexLsb = new long[capacity * 2];
+        indexSlots = new int[capacity * 2];
+        Arrays.fill(indexSlots, EMPTY);
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] != EMPTY) {
+                insert(oldMsb[i], oldLsb[i], oldSlots[i]);
+            }
+        }
+    }
+
+    private void insert(long idMsb, long idLsb, int slot) {
+        int mask = indexSlots.length - 1;
+        int position = hash(idMsb, idLsb) & mask;
+        while (indexSlots[position] != EMPTY) {
+            position = (position + 1) & mask;
+        }
+        indexMsb[position] = idMsb;
+        indexLsb[position] = idLsb;
+        indexSlots[position] = slot;
+    }
+
+    private int find(long idMsb, long idLsb) {
+        int position = position(idMsb, idLsb);
+        return position == EMPTY ? EMPTY : indexSlots[position];
+    }
+
+    private int position(long idMsb, long idLsb) {
+        int mask = indexSlots.length - 1;
+        for (int position = hash(idMsb, idLsb) & mask; indexSlots[position] != EMPTY; position = (position + 1) & mask) {
+            if (indexMsb[position] == idMsb && indexLsb[position] == idLsb) {
+                return position;
+            }
+        }
+        return EMPTY;
+    }
+
+    private static int hash(long idMsb, long idLsb) {
+        long hash = (idMsb ^ idLsb) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Mutation applied to the table
+     *
+     * @param sequence the sequence of its record in the log
+     * @param item     the item after the mutation, or before it for a deletion
+     */
+    record Mutation(long sequence, Item item) {
+    }
+}
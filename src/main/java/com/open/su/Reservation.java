@@ -0,0 +1,32 @@
+package com.open.su;
+
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Reservation of item stock.
+ *
+ * @param id        the id of the reservation
+ * @param itemId    the id of the item
+ * @param quantity  the reserved quantity
+ * @param stock     the stock of the item minus its reserved quantity after the reservation
+ * @param expiresAt the time the reservation expires if it is not committed
+ * @see StockReservations
+ */
+public record Reservation(UUID id, UUID itemId, long quantity, long stock, Date expiresAt) {
+
+    /**
+     * Convert the reservation to a {@link ReserveItemStockResponse}
+     *
+     * @return the grpc response
+     */
+    public ReserveItemStockResponse toReserveItemStockResponse() {
+        return ReserveItemStockResponse.newBuilder()
+                .setReservationId(this.id.toString())
+                .setId(this.itemId.toString())
+                .setQuantity(this.quantity)
+                .setStock(this.stock)
+                .setExpiresAt(this.expiresAt.toInstant().toString())
+                .build();
+    }
+}
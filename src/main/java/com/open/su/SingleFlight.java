@@ -0,0 +1,59 @@
+package com.open.su;
+
+import io.grpc.Deadline;
+import io.smallrye.mutiny.Uni;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent computations of the same key, so that callers arriving while a computation is in flight
+ * subscribe to its result instead of starting their own.
+ * <p>
+ * A computation is bounded by a deadline. A caller only joins a computation whose deadline is not earlier than its
+ * own, otherwise it starts a new computation that later callers join instead. A computation is thus bounded by the
+ * latest deadline of the callers sharing it, and never fails a caller before its own deadline.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Get the result of the in-flight computation of a key, or start a new one
+     *
+     * @param key         the key
+     * @param deadline    the deadline of the caller
+     * @param computation the computation, bounded by the given deadline, started if none joinable is in flight for
+     *                    the key
+     * @return a {@link Uni} with the result of the computation
+     */
+    public Uni<V> run(K key, Deadline deadline, Function<Deadline, Uni<V>> computation) {
+        return Uni.createFrom().deferred(() -> flights.compute(key, (k, flight) -> {
+            if (flight != null && !flight.deadline().isBefore(deadline)) {
+                return flight;
+            }
+            AtomicReference<Flight<V>> started = new AtomicReference<>();
+            started.set(new Flight<>(Uni.createFrom().deferred(() -> computation.apply(deadline))
+                    .onTermination().invoke(() -> flights.remove(k, started.get()))
+                    .memoize().indefinitely(), deadline));
+            return started.get();
+        }).result());
+    }
+
+    /**
+     * Forget the in-flight computation of a key, so that later callers start a new one
+     *
+     * @param key the key
+     */
+    public void forget(K key) {
+        flights.remove(key);
+    }
+
+    private record Flight<V>(Uni<V> result, Deadline deadline) {
+    }
+}
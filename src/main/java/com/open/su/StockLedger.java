@@ -0,0 +1,331 @@
+package com.open.su;
+
+import com.open.su.exceptions.ItemServiceException;
+import com.open.su.tracing.RequestTracer;
+import io.quarkus.hibernate.reactive.panache.Panache;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Append-only ledger of the stock mutations.
+ * <p>
+ * Every mutation performed by {@link ItemService} appends a {@link StockMovement} to the {@code stock_movement} table in
+ * the transaction of the mutation. The table is partitioned by month, so old movements are dropped a partition at a
+ * time, and movements outside the created partitions go to a default partition. The latest movement of each item is
+ * periodically copied to the {@code stock_snapshot} table, so the stock of an item at a given time is read from one
+ * snapshot plus the movements following it, even once the movements before the snapshot have been dropped.
+ * <p>
+ * The movements of the stock of an item in a location ({@link ItemLocationStock}) record the location and the stock of
+ * the location. They are listed with the other movements of the item, but are not part of its snapshots nor of its
+ * stock at a given time, which are the stock of the item itself.
+ * <p>
+ * Each movement records the id of its transaction. A snapshot takes the movements of the transactions between the
+ * mark left by the previous snapshot and the oldest transaction still running, which have all committed or aborted, so
+ * a movement committed late is taken by the next snapshot rather than missed.
+ * <p>
+ * The tables are created by the {@code V1__stock_ledger} migration, only the monthly partitions are created by the
+ * ledger itself, on startup and by {@link #maintainPartitions()}.
+ */
+@ApplicationScoped
+public class StockLedger {
+
+    private static final Logger LOGGER = Logger.getLogger(StockLedger.class);
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final Pattern PARTITION_NAME = Pattern.compile("stock_movement_p(\\d{6})");
+
+    private final PgPool pool;
+    private final int partitionsAhead;
+    private final int retentionMonths;
+    private final RequestTracer tracer;
+    private final boolean enabled;
+
+    @Inject
+    public StockLedger(PgPool pool, RequestTracer tracer,
+                       @ConfigProperty(name = "stock-service.ledger.partitions-ahead", defaultValue = "2") int partitionsAhead,
+                       @ConfigProperty(name = "stock-service.ledger.retention-months", defaultValue = "12") int retentionMonths,
+                       @ConfigProperty(name = "stock-service.storage", defaultValue = "postgres") String storage) {
+        // The ledger lives in the database, there is none when the items are stored in memory
+        this.enabled = !"memory".equals(storage);
+        this.pool = pool;
+        this.tracer = tracer;
+        this.partitionsAhead = partitionsAhead;
+        this.retentionMonths = retentionMonths;
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled) {
+            return;
+        }
+        createPartitions().await().indefinitely();
+    }
+
+    /**
+     * Append a movement to the ledger, in the current transaction
+     *
+     * @param id    the id of the item
+     * @param delta the change of the stock
+     * @param stock the stock of the item after the change
+     * @param kind  the kind of mutation
+     * @return a {@link Uni} of {@link Void}, otherwise a failed {@link Uni}
+     */
+    public Uni<Void> record(UUID id, long delta, long stock, StockMovement.Kind kind) {
+        return record(id, null, delta, stock, kind);
+    }
+
+    /**
+     * Append a movement of the stock of an item in a location to the ledger, in the current transaction
+     *
+     * @param id       the id of the item
+     * @param location the location, or {@code null} for the item itself
+     * @param delta    the change of the stock
+     * @param stock    the stock of the item in the location after the change
+     * @param kind     the kind of mutation
+     * @return a {@link Uni} of {@link Void}, otherwise a failed {@link Uni}
+     */
+    public Uni<Void> record(UUID id, String location, long delta, long stock, StockMovement.Kind kind) {
+        return Panache.getSession()
+                .onItem().transformToUni(session -> session.createNativeQuery("INSERT INTO stock_movement (item_id, location, delta, stock, kind) VALUES (?1, ?2, ?3, ?4, ?5)")
+                        .setParameter(1, id)
+                        .setParameter(2, location)
+                        .setParameter(3, delta)
+                        .setParameter(4, stock)
+                        .setParameter(5, kind.name())
+                        .executeUpdate())
+                .onItem().invoke(() -> tracer.current().mark("ledger"))
+                .onFailure().transform(t -> {
+                    String message = location == null
+                            ? "Failed to record stock movement for item with id " + id
+                            : "Failed to record stock movement in location " + location + " for item with id " + id;
+                    LOGGER.error("[" + kind + "] " + message, t);
+                    return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                })
+                .replaceWithVoid();
+    }
+
+    /**
+     * Append the deletion of several items to the ledger in a single statement, in the current transaction
+     *
+     * @param stocks the stock of each deleted item before its deletion
+     * @return a {@link Uni} of {@link Void}, otherwise a failed {@link Uni}
+     */
+    public Uni<Void> recordDeletes(Map<UUID, Long> stocks) {
+        if (stocks.isEmpty()) {
+            return Uni.createFrom().voidItem();
+        }
+        UUID[] ids = new UUID[stocks.size()];
+        Long[] deltas = new Long[stocks.size()];
+        int i = 0;
+        for (Map.Entry<UUID, Long> stock : stocks.entrySet()) {
+            ids[i] = stock.getKey();
+            deltas[i++] = -stock.getValue();
+        }
+        return Panache.getSession()
+                .onItem().transformToUni(session -> session.createNativeQuery("""
+                                INSERT INTO stock_movement (item_id, delta, stock, kind)
+                                SELECT id, delta, 0, ?3 FROM unnest(CAST(?1 AS uuid[]), CAST(?2 AS bigint[])) AS deleted (id, delta)""")
+                        .setParameter(1, ids)
+                        .setParameter(2, deltas)
+                        .setParameter(3, StockMovement.Kind.DELETE.name())
+                        .executeUpdate())
+                .onItem().invoke(() -> tracer.current().mark("ledger"))
+                .onFailure().transform(t -> {
+                    String message = "Failed to record stock movements for " + stocks.size() + " deleted items";
+                    LOGGER.error("[" + StockMovement.Kind.DELETE + "] " + message, t);
+                    return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                })
+                .replaceWithVoid();
+    }
+
+    /**
+     * Get the stock of an item at a given time
+     *
+     * @param id   the id of the item
+     * @param time the time
+     * @return a {@link Uni} with the stock, or {@code null} if the item had no recorded stock at that time
+     */
+    public Uni<Long> stockAsOf(UUID id, Instant time) {
+        return pool.preparedQuery("""
+                        WITH snapshot AS (SELECT stock, taken_at FROM stock_snapshot
+                                          WHERE item_id = $1 AND taken_at <= $2
+                                          ORDER BY taken_at DESC LIMIT 1)
+                        SELECT stock, kind FROM (
+                            SELECT stock, kind, created_at FROM stock_movement
+                            WHERE item_id = $1 AND location IS NULL AND created_at <= $2
+                              AND created_at > coalesce((SELECT taken_at FROM snapshot), '-infinity'::timestamptz)
+                            UNION ALL
+                            SELECT stock, NULL, taken_at FROM snapshot
+                        ) AS history
+                        ORDER BY created_at DESC LIMIT 1""")
+                .execute(Tuple.of(id, time.atOffset(ZoneOffset.UTC)))
+                .onFailure().transform(t -> {
+                    String message = "Failed to get stock as of " + time + " for item with id " + id;
+                    LOGGER.error(message, t);
+                    return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                })
+                .onItem().transform(rows -> {
+                    if (!rows.iterator().hasNext()) {
+                        return null;
+                    }
+                    Row row = rows.iterator().next();
+                    return StockMovement.Kind.DELETE.name().equals(row.getString("kind")) ? null : row.getLong("stock");
+                });
+    }
+
+    /**
+     * List the movements of an item in a time range
+     *
+     * @param id   the id of the item
+     * @param from the start of the range (inclusive)
+     * @param to   the end of the range (exclusive)
+     * @return a {@link Uni} with the movements, oldest first
+     */
+    public Uni<List<StockMovement>> movements(UUID id, Instant from, Instant to) {
+        return pool.preparedQuery("""
+                        SELECT item_id, location, delta, stock, kind, created_at FROM stock_movement
+                        WHERE item_id = $1 AND created_at >= $2 AND created_at < $3
+                        ORDER BY created_at""")
+                .execute(Tuple.of(id, from.atOffset(ZoneOffset.UTC), to.atOffset(ZoneOffset.UTC)))
+                .onFailure().transform(t -> {
+                    String message = "Failed to list stock movements for item with id " + id;
+                    LOGGER.error(message, t);
+                    return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                })
+                .onItem().transform(rows -> {
+                    List<StockMovement> movements = new ArrayList<>(rows.size());
+                    rows.forEach(row -> movements.add(StockMovement.fromRow(row)));
+                    return movements;
+                });
+    }
+
+    /**
+     * Snapshot the latest movement of every item moved by the transactions that ended since the previous snapshot
+     *
+     * @return a {@link Uni} of {@link Void}
+     */
+    @Scheduled(every = "${stock-service.ledger.snapshot-interval:5m}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    public Uni<Void> snapshot() {
+        if (!enabled) {
+            return Uni.createFrom().voidItem();
+        }
+        return pool.query("""
+                        WITH mark AS (SELECT xact_id FROM stock_snapshot_mark FOR UPDATE),
+                             horizon AS (SELECT pg_snapshot_xmin(pg_current_snapshot()) AS xact_id),
+                             taken AS (
+                                 INSERT INTO stock_snapshot (item_id, stock, taken_at)
+                                 SELECT DISTINCT ON (item_id) item_id, stock, created_at FROM stock_movement
+                                 WHERE location IS NULL
+                                   AND xact_id >= (SELECT xact_id FROM mark) AND xact_id < (SELECT xact_id FROM horizon)
+                                 ORDER BY item_id, created_at DESC
+                                 ON CONFLICT DO NOTHING
+                                 RETURNING item_id
+                             )
+                        UPDATE stock_snapshot_mark SET xact_id = greatest(xact_id, (SELECT xact_id FROM horizon))
+                        RETURNING (SELECT count(*) FROM taken) AS taken""")
+                .execute()
+                .onItem().invoke(rows -> LOGGER.debug("Snapshotted stock of " + rows.iterator().next().getLong("taken") + " items"))
+                .onFailure().invoke(t -> LOGGER.error("Failed to snapshot stock", t))
+                .replaceWithVoid();
+    }
+
+    /**
+     * Create the upcoming partitions of the ledger, and drop the partitions older than the retention once their
+     * movements are snapshotted, along with the old movements of the default partition and the snapshots that are no
+     * longer needed
+     *
+     * @return a {@link Uni} of {@link Void}
+     */
+    @Scheduled(cron = "${stock-service.ledger.maintenance-cron:0 0 3 * * ?}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    public Uni<Void> maintainPartitions() {
+        if (!enabled) {
+            return Uni.createFrom().voidItem();
+        }
+        YearMonth oldestKept = YearMonth.now(ZoneOffset.UTC).minusMonths(retentionMonths);
+        OffsetDateTime retainedFrom = toTimestamp(oldestKept);
+        return createPartitions()
+                .chain(this::snapshot)
+                .chain(() -> pool.query("""
+                                SELECT child.relname AS name FROM pg_inherits
+                                JOIN pg_class parent ON parent.oid = pg_inherits.inhparent
+                                JOIN pg_class child ON child.oid = pg_inherits.inhrelid
+                                WHERE parent.relname = 'stock_movement'""")
+                        .execute())
+                .onItem().transformToMulti(rows -> Multi.createFrom().iterable(rows))
+                .map(row -> row.getString("name"))
+                .filter(name -> {
+                    // Only the monthly partitions are dropped, the default partition and foreign tables are left alone
+                    Matcher matcher = PARTITION_NAME.matcher(name);
+                    return matcher.matches() && YearMonth.parse(matcher.group(1), PARTITION_SUFFIX).isBefore(oldestKept);
+                })
+                .onItem().transformToUniAndConcatenate(name -> pool.query("DROP TABLE IF EXISTS " + name).execute()
+                        .onItem().invoke(() -> LOGGER.info("Dropped stock ledger partition " + name)))
+                .collect().last()
+                .chain(() -> pool.preparedQuery("DELETE FROM stock_movement_default WHERE created_at < $1").execute(Tuple.of(retainedFrom)))
+                .chain(() -> pruneSnapshots(retainedFrom))
+                .onFailure().invoke(t -> LOGGER.error("Failed to maintain stock ledger partitions", t))
+                .replaceWithVoid();
+    }
+
+    /**
+     * Delete the snapshots that are not needed to read the stock since a given time: the snapshots superseded by a
+     * newer one taken before that time, and the last snapshot of the items deleted before that time
+     *
+     * @param retainedFrom the oldest time the stock can be read at
+     * @return a {@link Uni} of {@link Void}
+     */
+    Uni<Void> pruneSnapshots(OffsetDateTime retainedFrom) {
+        return pool.preparedQuery("""
+                        DELETE FROM stock_snapshot AS old WHERE taken_at < $1 AND (
+                            EXISTS (SELECT 1 FROM stock_snapshot AS newer
+                                    WHERE newer.item_id = old.item_id AND newer.taken_at > old.taken_at AND newer.taken_at <= $1)
+                            OR (NOT EXISTS (SELECT 1 FROM item WHERE item.id = old.item_id)
+                                AND NOT EXISTS (SELECT 1 FROM stock_snapshot AS newer
+                                                WHERE newer.item_id = old.item_id AND newer.taken_at > old.taken_at)
+                                AND NOT EXISTS (SELECT 1 FROM stock_movement
+                                                WHERE stock_movement.item_id = old.item_id AND stock_movement.created_at > old.taken_at)))""")
+                .execute(Tuple.of(retainedFrom))
+                .onItem().invoke(rows -> LOGGER.info("Pruned " + rows.rowCount() + " stock snapshots"))
+                .replaceWithVoid();
+    }
+
+    Uni<Void> createPartitions() {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        return Multi.createFrom().range(0, partitionsAhead + 1)
+                .map(current::plusMonths)
+                .onItem().transformToUniAndConcatenate(month -> pool.query("CREATE TABLE IF NOT EXISTS stock_movement_p" + month.format(PARTITION_SUFFIX)
+                                + " PARTITION OF stock_movement FOR VALUES FROM ('" + toTimestamp(month) + "') TO ('" + toTimestamp(month.plusMonths(1)) + "')").execute()
+                        // Fails if the default partition already holds movements of the month, they are left there
+                        .onFailure().recoverWithItem(t -> {
+                            LOGGER.warn("Failed to create stock ledger partition for " + month + ", its movements stay in the default partition", t);
+                            return null;
+                        }))
+                .collect().last()
+                .replaceWithVoid();
+    }
+
+    private static OffsetDateTime toTimestamp(YearMonth month) {
+        return OffsetDateTime.of(month.getYear(), month.getMonthValue(), 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    }
+}
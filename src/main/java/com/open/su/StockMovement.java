@@ -0,0 +1,50 @@
+package com.open.su;
+
+import io.vertx.mutiny.sqlclient.Row;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Entry of the append-only stock ledger.
+ *
+ * @param itemId    the id of the item
+ * @param location  the location of the stock, or {@code null} for the stock of the item itself
+ * @param delta     the change of the stock
+ * @param stock     the stock of the item (in the location) after the change
+ * @param kind      the kind of mutation
+ * @param createdAt the time of the change
+ * @see StockLedger
+ */
+public record StockMovement(UUID itemId, String location, long delta, long stock, Kind kind, Instant createdAt) {
+
+    /**
+     * Create a movement from a database row
+     *
+     * @param row the row, with all the movement columns
+     * @return the movement
+     */
+    static StockMovement fromRow(Row row) {
+        return new StockMovement(
+                row.getUUID("item_id"),
+                row.getString("location"),
+                row.getLong("delta"),
+                row.getLong("stock"),
+                Kind.valueOf(row.getString("kind")),
+                row.getOffsetDateTime("created_at").toInstant());
+    }
+
+    /**
+     * Kinds of mutation recorded in the ledger
+     */
+    public enum Kind {
+        CREATE,
+        UPDATE,
+        INCREMENT,
+        DELETE,
+        // Reservations took and gave back stock before they were held against it, kept for the movements recorded then
+        RESERVE,
+        RELEASE,
+        COMMIT
+    }
+}
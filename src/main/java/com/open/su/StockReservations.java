@@ -0,0 +1,290 @@
+package com.open.su;
+
+import com.open.su.exceptions.ItemServiceException;
+import com.open.su.tracing.RequestTracer;
+import io.quarkus.hibernate.reactive.panache.Panache;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.tuples.Tuple2;
+import io.vertx.mutiny.pgclient.PgPool;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Reservations of item stock (for example during a checkout).
+ * <p>
+ * A reservation holds its quantity against the stock of the item when it is made: the {@code reserved} quantity of the
+ * item is raised, and its stock minus its reserved quantity cannot go below its minimum stock. The reservation is a row
+ * of the {@code stock_reservation} table until it is committed, released or expires. Committing a reservation takes its
+ * quantity out of the stock and records the movement in the stock ledger, releasing it or letting it expire only lowers
+ * the reserved quantity, the stock itself never changed.
+ * <p>
+ * Expiries are tracked by a {@link TimingWheel} rather than by scanning the table, and the wheel is rebuilt from the
+ * table on startup. Committed and released reservations are left in the wheel, their expiry matches no row. The
+ * reservations tracked by an instance that went away are released by a less frequent scan of the expired rows, see
+ * {@link #releaseExpired(int)}.
+ * <p>
+ * The table and the {@code reserved} column of existing items are created by the {@code V3__stock_reservation}
+ * migration.
+ */
+@ApplicationScoped
+public class StockReservations {
+
+    private static final Logger LOGGER = Logger.getLogger(StockReservations.class);
+
+    private static final int WHEEL_SIZE = 64;
+
+    private final PgPool pool;
+    private final RequestTracer tracer;
+    private final boolean enabled;
+    private final TimingWheel<UUID> expiries;
+
+    @Inject
+    public StockReservations(PgPool pool, RequestTracer tracer,
+                             @ConfigProperty(name = "stock-service.reservations.tick", defaultValue = "1s") Duration tick,
+                             @ConfigProperty(name = "stock-service.storage", defaultValue = "postgres") String storage) {
+        this.pool = pool;
+        this.tracer = tracer;
+        this.enabled = !"memory".equals(storage);
+        this.expiries = new TimingWheel<>(tick.toMillis(), WHEEL_SIZE, System.currentTimeMillis());
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled) {
+            return;
+        }
+        pool.query("SELECT id, expires_at FROM stock_reservation").execute()
+                .onItem().invoke(rows -> {
+                    rows.forEach(row -> expiries.add(row.getUUID("id"), Timestamp.valueOf(row.getLocalDateTime("expires_at")).getTime()));
+                    LOGGER.info("Loaded " + rows.rowCount() + " stock reservations");
+                })
+                .await().indefinitely();
+    }
+
+    /**
+     * Hold a quantity against the stock of an item and insert the reservation in a single statement, in the current
+     * transaction
+     * <p>
+     * Its expiry is tracked once the transaction is committed, see {@link #track(UUID, Date)}.
+     *
+     * @param reservationId the id of the reservation
+     * @param id            the id of the item
+     * @param quantity      the reserved quantity
+     * @param expiresAt     the expiry of the reservation
+     * @return a {@link Uni} with the stock of the item minus its reserved quantity after the reservation, or
+     * {@code null} if the item does not exist or if the reservation would take it below its minimum stock, otherwise a
+     * failed {@link Uni}
+     */
+    public Uni<Long> reserve(UUID reservationId, UUID id, long quantity, Date expiresAt) {
+        return Panache.getSession()
+                .onItem().transformToUni(session -> session.createNativeQuery("""
+                                WITH reserved AS (
+                                    UPDATE item SET reserved = reserved + ?3, updated_at = ?5
+                                    WHERE id = ?2 AND stock - reserved - ?3 >= min_stock
+                                    RETURNING id, stock - reserved AS available
+                                ), inserted AS (
+                                    INSERT INTO stock_reservation (id, item_id, quantity, expires_at, created_at)
+                                    SELECT ?1, id, ?3, ?4, ?5 FROM reserved
+                                )
+                                SELECT available FROM reserved""", Long.class)
+                        .setParameter(1, reservationId)
+                        .setParameter(2, id)
+                        .setParameter(3, quantity)
+                        .setParameter(4, expiresAt)
+                        .setParameter(5, new Date())
+                        .getResultList())
+                .onItem().invoke(() -> tracer.current().mark("reservation-insert"))
+                .onFailure().transform(t -> {
+                    String message = "Failed to persist reservation " + reservationId + " for item with id " + id;
+                    LOGGER.error("[" + ItemService.Method.UPDATE + "] " + message, t);
+                    return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                })
+                .onItem().transform(stocks -> stocks.isEmpty() ? null : stocks.get(0));
+    }
+
+    /**
+     * Track the expiry of a committed reservation
+     *
+     * @param reservationId the id of the reservation
+     * @param expiresAt     the expiry of the reservation
+     */
+    public void track(UUID reservationId, Date expiresAt) {
+        expiries.add(reservationId, expiresAt.getTime());
+    }
+
+    /**
+     * Track again expired reservations whose release failed, to release them at the next tick
+     *
+     * @param reservationIds the ids of the reservations
+     */
+    public void retry(Collection<UUID> reservationIds) {
+        long now = System.currentTimeMillis();
+        reservationIds.forEach(id -> expiries.add(id, now));
+    }
+
+    /**
+     * Delete a reservation that has not expired yet, take its quantity out of the stock and the reserved quantity of
+     * its item, and record the movement in the stock ledger, in a single statement, in the current transaction
+     * <p>
+     * The stock cannot leave the bounds of the item: the reserved quantity was already held above its minimum stock.
+     *
+     * @param reservationId the id of the reservation
+     * @return a {@link Uni} with the id of the item of the reservation, or {@code null} if there is no such reservation
+     * or if it has expired, otherwise a failed {@link Uni}
+     */
+    public Uni<UUID> commit(UUID reservationId) {
+        return Panache.getSession()
+                .onItem().transformToUni(session -> session.createNativeQuery("""
+                                WITH committed AS (
+                                    DELETE FROM stock_reservation WHERE id = ?1 AND expires_at > ?2
+                                    RETURNING item_id, quantity
+                                ), updated AS (
+                                    UPDATE item SET stock = item.stock - committed.quantity,
+                                                    reserved = item.reserved - committed.quantity,
+                                                    updated_at = ?2
+                                    FROM committed
+                                    WHERE item.id = committed.item_id
+                                    RETURNING item.id, item.stock, committed.quantity
+                                ), recorded AS (
+                                    INSERT INTO stock_movement (item_id, delta, stock, kind)
+                                    SELECT id, -quantity, stock, ?3 FROM updated
+                                )
+                                SELECT item_id FROM committed""", UUID.class)
+                        .setParameter(1, reservationId)
+                        .setParameter(2, new Date())
+                        .setParameter(3, StockMovement.Kind.COMMIT.name())
+                        .getResultList())
+                .onItem().invoke(() -> tracer.current().mark("reservation-commit"))
+                .onFailure().transform(t -> {
+                    String message = "Failed to commit reservation " + reservationId;
+                    LOGGER.error("[" + ItemService.Method.UPDATE + "] " + message, t);
+                    return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                })
+                .onItem().transform(ids -> ids.isEmpty() ? null : ids.get(0));
+    }
+
+    /**
+     * Delete reservations and lower the reserved quantity of their items in a single statement, in the current
+     * transaction
+     *
+     * @param reservationIds the ids of the reservations
+     * @param expiredOnly    whether to only release the reservations that have expired
+     * @return a {@link Uni} with the released quantity and the stock minus the reserved quantity after the release of
+     * each item, see {@link #release(String, Object, String)}, otherwise a failed {@link Uni}
+     */
+    public Uni<Map<UUID, Tuple2<Long, Long>>> release(Collection<UUID> reservationIds, boolean expiredOnly) {
+        if (reservationIds.isEmpty()) {
+            return Uni.createFrom().item(Map.of());
+        }
+        return release("id = ANY(?1)" + (expiredOnly ? " AND expires_at <= ?2" : ""), reservationIds.toArray(UUID[]::new),
+                reservationIds.size() + " reservations");
+    }
+
+    /**
+     * Delete a batch of expired reservations, whether tracked by this instance or not, and lower the reserved quantity
+     * of their items in a single statement, in the current transaction
+     * <p>
+     * Reservations locked by a concurrent release are skipped, they are released by their own transaction.
+     *
+     * @param limit the maximum number of reservations to release
+     * @return a {@link Uni} with the released quantity and the stock minus the reserved quantity after the release of
+     * each item, see {@link #release(String, Object, String)}, otherwise a failed {@link Uni}
+     */
+    public Uni<Map<UUID, Tuple2<Long, Long>>> releaseExpired(int limit) {
+        return release("id IN (SELECT id FROM stock_reservation WHERE expires_at <= ?2 LIMIT ?1 FOR UPDATE SKIP LOCKED)", limit,
+                "expired reservations");
+    }
+
+    /**
+     * Delete the reservations matching a condition and lower the reserved quantity of their items, in a single
+     * statement
+     * <p>
+     * The stock of the items does not change, so the release cannot break their bounds. A reservation whose item no
+     * longer exists is still deleted, with a {@code null} stock.
+     *
+     * @param condition   the condition on the reservations, with the parameter {@code ?1} and the current time as
+     *                    {@code ?2}
+     * @param parameter   the parameter of the condition
+     * @param description the released reservations, for logging purposes
+     * @return a {@link Uni} with the released quantity and the stock minus the reserved quantity after the release of
+     * each item, otherwise a failed {@link Uni}
+     */
+    private Uni<Map<UUID, Tuple2<Long, Long>>> release(String condition, Object parameter, String description) {
+        return Panache.getSession()
+                .onItem().transformToUni(session -> session.createNativeQuery("""
+                                WITH released AS (
+                                    DELETE FROM stock_reservation WHERE %s
+                                    RETURNING item_id, quantity
+                                ), totals AS (
+                                    SELECT item_id, CAST(sum(quantity) AS bigint) AS quantity FROM released GROUP BY item_id
+                                ), updated AS (
+                                    UPDATE item SET reserved = item.reserved - totals.quantity, updated_at = ?2
+                                    FROM totals
+                                    WHERE item.id = totals.item_id
+                                    RETURNING item.id, item.stock - item.reserved AS available
+                                )
+                                SELECT totals.item_id, totals.quantity, updated.available
+                                FROM totals LEFT JOIN updated ON updated.id = totals.item_id""".formatted(condition), Object[].class)
+                        .setParameter(1, parameter)
+                        .setParameter(2, new Date())
+                        .getResultList())
+                .onItem().invoke(() -> tracer.current().mark("reservation-release"))
+                .onFailure().transform(t -> {
+                    String message = "Failed to release " + description;
+                    LOGGER.error("[" + ItemService.Method.UPDATE + "] " + message, t);
+                    return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                })
+                .onItem().transform(rows -> {
+                    Map<UUID, Tuple2<Long, Long>> released = new LinkedHashMap<>();
+                    rows.forEach(row -> released.put((UUID) row[0], Tuple2.of(((Number) row[1]).longValue(), row[2] == null ? null : ((Number) row[2]).longValue())));
+                    return released;
+                });
+    }
+
+    /**
+     * Delete the reservations of items, without lowering their reserved quantity, in the current transaction
+     *
+     * @param ids the ids of the items
+     * @return a {@link Uni} of {@link Void}, otherwise a failed {@link Uni}
+     */
+    public Uni<Void> delete(Collection<UUID> ids) {
+        if (ids.isEmpty()) {
+            return Uni.createFrom().voidItem();
+        }
+        return Panache.getSession()
+                .onItem().transformToUni(session -> session.createNativeQuery("DELETE FROM stock_reservation WHERE item_id = ANY(?1)")
+                        .setParameter(1, ids.toArray(UUID[]::new))
+                        .executeUpdate())
+                .onItem().invoke(() -> tracer.current().mark("reservation-delete"))
+                .onFailure().transform(t -> {
+                    String message = "Failed to delete reservations for " + ids.size() + " items";
+                    LOGGER.error("[" + ItemService.Method.DELETE + "] " + message, t);
+                    return ItemServiceException.DATABASE_ERROR.withCause(t).withMessage(message);
+                })
+                .replaceWithVoid();
+    }
+
+    /**
+     * Take the reservations whose expiry has passed out of the timing wheel
+     *
+     * @return the ids of the expired reservations
+     */
+    public List<UUID> expired() {
+        List<UUID> expired = new ArrayList<>();
+        expiries.advance(System.currentTimeMillis(), expired::add);
+        return expired;
+    }
+}
@@ -0,0 +1,132 @@
+package com.open.su;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel of values that expire at a given time.
+ * <p>
+ * The first wheel has {@code wheelSize} buckets of one tick each, and every further wheel has {@code wheelSize} buckets
+ * spanning a full turn of the wheel below it. Adding a value and expiring it are constant time, whatever the number of
+ * values and their expiry. When the time reaches a bucket of an upper wheel, its values are moved down to the wheels
+ * below. Values expire at the end of the tick of their expiry, never before it. Wheels are added as far expiries need
+ * them.
+ *
+ * @param <T> the type of the values
+ */
+final class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final List<List<Entry<T>>[]> wheels = new ArrayList<>();
+    private long currentTime;
+    private int size;
+
+    /**
+     * Create an empty timing wheel
+     *
+     * @param tickMillis the duration of a tick, in milliseconds
+     * @param wheelSize  the number of buckets of each wheel
+     * @param now        the current time, in milliseconds since the epoch
+     */
+    TimingWheel(long tickMillis, int wheelSize, long now) {
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.currentTime = now - now % tickMillis;
+    }
+
+    /**
+     * Add a value
+     *
+     * @param value     the value
+     * @param expiresAt the time the value expires, in milliseconds since the epoch
+     */
+    synchronized void add(T value, long expiresAt) {
+        place(new Entry<>(value, Math.max(expiresAt, currentTime)));
+        size++;
+    }
+
+    /**
+     * Advance the time and expire the values whose tick has ended
+     *
+     * @param now     the current time, in milliseconds since the epoch
+     * @param expired the consumer of the expired values
+     */
+    synchronized void advance(long now, Consumer<T> expired) {
+        while (currentTime + tickMillis <= now) {
+            if (size == 0) {
+                currentTime = now - now % tickMillis;
+                return;
+            }
+            List<Entry<T>>[] first = wheel(0);
+            int index = bucket(currentTime, 0);
+            List<Entry<T>> bucket = first[index];
+            first[index] = null;
+            currentTime += tickMillis;
+            if (bucket != null) {
+                size -= bucket.size();
+                bucket.forEach(entry -> expired.accept(entry.value()));
+            }
+            // Move the values of the buckets the time just reached down to the wheels below, upper wheels first
+            for (int level = wheels.size() - 1; level > 0; level--) {
+                if (currentTime % span(level) == 0) {
+                    List<Entry<T>>[] wheel = wheels.get(level);
+                    int cascaded = bucket(currentTime, level);
+                    List<Entry<T>> entries = wheel[cascaded];
+                    wheel[cascaded] = null;
+                    if (entries != null) {
+                        entries.forEach(this::place);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of values that have not expired yet
+     *
+     * @return the number of values
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    private void place(Entry<T> entry) {
+        int level = 0;
+        // A wheel holds the expiries until one turn after the start of its current bucket
+        while (entry.expiresAt() >= currentTime - currentTime % span(level) + span(level) * wheelSize) {
+            level++;
+        }
+        List<Entry<T>>[] wheel = wheel(level);
+        int index = bucket(entry.expiresAt(), level);
+        if (wheel[index] == null) {
+            wheel[index] = new ArrayList<>();
+        }
+        wheel[index].add(entry);
+    }
+
+    private List<Entry<T>>[] wheel(int level) {
+        while (wheels.size() <= level) {
+            @SuppressWarnings("unchecked")
+            List<Entry<T>>[] wheel = new List[wheelSize];
+            wheels.add(wheel);
+        }
+        return wheels.get(level);
+    }
+
+    private long span(int level) {
+        long span = tickMillis;
+        for (int i = 0; i < level; i++) {
+            span *= wheelSize;
+        }
+        return span;
+    }
+
+    private int bucket(long time, int level) {
+        return (int) ((time / span(level)) % wheelSize);
+    }
+
+    private record Entry<T>(T value, long expiresAt) {
+    }
+}
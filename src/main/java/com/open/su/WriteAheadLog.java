@@ -0,0 +1,443 @@
+package com.open.su;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of the mutations of the {@link MemoryItemTable}, in memory-mapped segment files.
+ * <p>
+ * Every record is the full state of an item after a mutation ({@link #PUT}) or its deletion ({@link #DELETE}), so
+ * replaying a record twice is harmless and a snapshot taken while mutations go on only needs the records appended after
+ * it started. Records have a fixed size and a checksum, so a record torn by a crash ends the replay of its segment.
+ * <p>
+ * Appends only write to the mapped segment. Callers wait for durability with {@link #sync(long)}, and a single flusher
+ * thread forces the segment to disk for all the records appended since its previous force (group commit). The futures
+ * of the synced records are completed outside the lock of the log, so their callbacks can append or sync again. The
+ * flusher also preallocates the next segment and forces the full ones, so appends do not wait for the disk. If a
+ * segment cannot be forced or allocated, the log fails: pending and later syncs fail and later appends are rejected,
+ * since the durability of the records can no longer be known.
+ */
+final class WriteAheadLog implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(WriteAheadLog.class);
+
+    /**
+     * Size of a record: type, checksum, id and the five item values
+     */
+    static final int RECORD_SIZE = 64;
+
+    /**
+     * Record of the state of an item after a mutation
+     */
+    static final byte PUT = 1;
+
+    /**
+     * Record of the deletion of an item
+     */
+    static final byte DELETE = 2;
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final boolean fsync;
+    private final List<Pending> pending = new ArrayList<>();
+    private final List<Segment> filled = new ArrayList<>();
+    private final Thread flusher;
+    private Segment current;
+    private Segment next;
+    private long lastSegment;
+    private int position;
+    private long appended;
+    private long synced;
+    private boolean closed;
+    private RuntimeException failure;
+
+    /**
+     * Open a new segment after the existing ones
+     *
+     * @param directory         the directory of the segments
+     * @param recordsPerSegment the number of records of a segment
+     * @param fsync             whether {@link #sync(long)} waits for the records to be forced to disk
+     */
+    WriteAheadLog(Path directory, int recordsPerSegment, boolean fsync) {
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+        this.fsync = fsync;
+        this.lastSegment = segments(directory).stream().mapToLong(Long::longValue).max().orElse(0) + 1;
+        this.current = open(lastSegment);
+        this.flusher = new Thread(this::flush, "wal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Append a record
+     * <p>
+     * A full segment is replaced by the segment preallocated by the flusher, which forces and closes the full one, so
+     * appends never wait for the disk unless the flusher is a whole segment behind.
+     *
+     * @return the sequence of the record, to wait for its durability with {@link #sync(long)}
+     */
+    synchronized long append(byte type, long msb, long lsb, long stock, long minStock, long maxStock, long createdAt, long updatedAt) {
+        if (failure != null) {
+            throw new IllegalStateException("Write-ahead log failed", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Write-ahead log is closed");
+        }
+        if (position == current.buffer().capacity()) {
+            nextSegment();
+        }
+        write(current.buffer(), position, type, msb, lsb, stock, minStock, maxStock, createdAt, updatedAt);
+        position += RECORD_SIZE;
+        return ++appended;
+    }
+
+    /**
+     * Wait for a record to be durable
+     *
+     * @param sequence the sequence of the record
+     * @return a {@link CompletionStage} completed once the record is forced to disk, or failed if the log cannot be
+     * forced to disk anymore
+     */
+    synchronized CompletionStage<Void> sync(long sequence) {
+        if (!fsync || sequence <= synced) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (failure != null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Write-ahead log failed", failure));
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        pending.add(new Pending(sequence, future));
+        notifyAll();
+        return future;
+    }
+
+    /**
+     * Close the current segment and open the next one, the current segment is forced to disk by the flusher
+     *
+     * @return the sequence of the new segment, the first one to replay after a snapshot started now
+     */
+    synchronized long roll() {
+        if (failure != null) {
+            throw new IllegalStateException("Write-ahead log failed", failure);
+        }
+        nextSegment();
+        return current.number();
+    }
+
+    /**
+     * Delete the segments before a segment, once they are covered by a snapshot
+     *
+     * @param firstKept the sequence of the first segment to keep
+     */
+    void deleteBefore(long firstKept) {
+        for (long old : segments(directory)) {
+            if (old < firstKept) {
+                try {
+                    Files.deleteIfExists(segmentPath(directory, old));
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to delete write-ahead log segment " + old, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // The flusher is gone, the segments it has not forced yet are forced here
+        List<CompletableFuture<Void>> ready = List.of();
+        RuntimeException forceFailure = null;
+        synchronized (this) {
+            try {
+                filled.forEach(segment -> force(segment.buffer()));
+                force(current.buffer());
+                ready = synced(appended);
+            } catch (RuntimeException e) {
+                forceFailure = e;
+            }
+            filled.forEach(segment -> close(segment.channel()));
+            filled.clear();
+            close(current.channel());
+            if (next != null) {
+                close(next.channel());
+            }
+        }
+        if (forceFailure != null) {
+            fail(forceFailure);
+        }
+        completeAll(ready);
+    }
+
+    /**
+     * Replay the records of the segments from a segment on, oldest first
+     *
+     * @param directory the directory of the segments
+     * @param first     the sequence of the first segment to replay
+     * @param consumer  the consumer of the records
+     * @return the number of replayed records
+     */
+    static long replay(Path directory, long first, RecordConsumer consumer) {
+        long count = 0;
+        for (long segment : segments(directory)) {
+            if (segment < first) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(segmentPath(directory, segment), StandardOpenOption.READ)) {
+                count += read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), consumer);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to replay write-ahead log segment " + segment, e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Read records until the end of a buffer, an empty record or a torn record
+     *
+     * @param buffer   the buffer
+     * @param consumer the consumer of the records
+     * @return the number of read records
+     */
+    static long read(ByteBuffer buffer, RecordConsumer consumer) {
+        long count = 0;
+        for (int offset = 0; offset + RECORD_SIZE <= buffer.limit(); offset += RECORD_SIZE) {
+            byte type = buffer.get(offset);
+            if (type == 0 || buffer.getInt(offset + 4) != checksum(buffer, offset)) {
+                break;
+            }
+            consumer.accept(type, buffer.getLong(offset + 8), buffer.getLong(offset + 16), buffer.getLong(offset + 24),
+                    buffer.getLong(offset + 32), buffer.getLong(offset + 40), buffer.getLong(offset + 48), buffer.getLong(offset + 56));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Write a record in a buffer
+     */
+    static void write(ByteBuffer buffer, int offset, byte type, long msb, long lsb, long stock, long minStock, long maxStock, long createdAt, long updatedAt) {
+        buffer.putLong(offset + 8, msb)
+                .putLong(offset + 16, lsb)
+                .putLong(offset + 24, stock)
+                .putLong(offset + 32, minStock)
+                .putLong(offset + 40, maxStock)
+                .putLong(offset + 48, createdAt)
+                .putLong(offset + 56, updatedAt)
+                .put(offset, type);
+        buffer.putInt(offset + 4, checksum(buffer, offset));
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.get(offset));
+        crc.update(buffer.slice(offset + 8, RECORD_SIZE - 8));
+        return (int) crc.getValue();
+    }
+
+    private void flush() {
+        while (true) {
+            long target;
+            List<Segment> toClose;
+            MappedByteBuffer toForce;
+            long toAllocate;
+            synchronized (this) {
+                while (pending.isEmpty() && filled.isEmpty() && next != null && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (closed || failure != null) {
+                    return;
+                }
+                target = appended;
+                toClose = new ArrayList<>(filled);
+                filled.clear();
+                toForce = current.buffer();
+                toAllocate = next == null ? ++lastSegment : 0;
+            }
+            // Forced and allocated outside the lock, appends go on while the records of the group reach the disk
+            Segment allocated = null;
+            try {
+                for (Segment segment : toClose) {
+                    force(segment.buffer());
+                    close(segment.channel());
+                }
+                force(toForce);
+                if (toAllocate > 0) {
+                    allocated = open(toAllocate);
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+            List<CompletableFuture<Void>> ready;
+            synchronized (this) {
+                if (allocated != null) {
+                    // A segment opened by an append while this one was allocated is newer, this one must not be used
+                    if (next == null && allocated.number() > current.number()) {
+                        next = allocated;
+                    } else {
+                        discard(allocated);
+                    }
+                }
+                ready = synced(target);
+            }
+            completeAll(ready);
+        }
+    }
+
+    /**
+     * Switch to the preallocated segment, or open one if the flusher has not preallocated it yet, and hand the current
+     * segment to the flusher, under the lock
+     */
+    private void nextSegment() {
+        filled.add(current);
+        if (next != null) {
+            current = next;
+            next = null;
+        } else {
+            current = open(++lastSegment);
+        }
+        position = 0;
+        notifyAll();
+    }
+
+    /**
+     * Mark the records up to a sequence as synced, under the lock
+     *
+     * @param sequence the sequence of the last synced record
+     * @return the futures of the pending records now synced, to complete outside the lock
+     */
+    private List<CompletableFuture<Void>> synced(long sequence) {
+        synced = Math.max(synced, sequence);
+        List<CompletableFuture<Void>> ready = new ArrayList<>();
+        Iterator<Pending> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            Pending next = iterator.next();
+            if (next.sequence() <= synced) {
+                ready.add(next.future());
+                iterator.remove();
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * Mark the log as failed: the pending and later syncs fail, and later appends are rejected
+     *
+     * @param cause the failure to force or allocate a segment
+     */
+    private void fail(RuntimeException cause) {
+        LOGGER.error("Write-ahead log failed, mutations are rejected from now on", cause);
+        List<Pending> failed;
+        synchronized (this) {
+            failure = cause;
+            failed = new ArrayList<>(pending);
+            pending.clear();
+        }
+        failed.forEach(next -> next.future().completeExceptionally(new IllegalStateException("Write-ahead log failed", cause)));
+    }
+
+    private static void completeAll(List<CompletableFuture<Void>> ready) {
+        ready.forEach(future -> future.complete(null));
+    }
+
+    private Segment open(long number) {
+        try {
+            Files.createDirectories(directory);
+            FileChannel channel = FileChannel.open(segmentPath(directory, number), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(number, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * RECORD_SIZE));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open write-ahead log segment " + number, e);
+        }
+    }
+
+    private void discard(Segment segment) {
+        close(segment.channel());
+        try {
+            Files.deleteIfExists(segmentPath(directory, segment.number()));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete write-ahead log segment " + segment.number(), e);
+        }
+    }
+
+    private static void force(MappedByteBuffer buffer) {
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    private static void close(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close write-ahead log segment", e);
+        }
+    }
+
+    private static Path segmentPath(Path directory, long segment) {
+        return directory.resolve(SEGMENT_PREFIX + String.format("%016d", segment) + SEGMENT_SUFFIX);
+    }
+
+    private static List<Long> segments(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list write-ahead log segments", e);
+        }
+    }
+
+    /**
+     * Consumer of the records of the log
+     */
+    @FunctionalInterface
+    interface RecordConsumer {
+        void accept(byte type, long msb, long lsb, long stock, long minStock, long maxStock, long createdAt, long updatedAt);
+    }
+
+    private record Pending(long sequence, CompletableFuture<Void> future) {
+    }
+
+    private record Segment(long number, FileChannel channel, MappedByteBuffer buffer) {
+    }
+}
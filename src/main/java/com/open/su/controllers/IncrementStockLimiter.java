@@ -0,0 +1,167 @@
+package com.open.su.controllers;
+
+import com.open.su.ConnectionWaitMonitor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.smallrye.common.vertx.VertxContext;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.Supplier;
+
+/**
+ * Adaptive limit of the increment stock messages processed concurrently.
+ * <p>
+ * While the consumer uses its whole limit, the limit grows by one message per round of completions. It shrinks by a
+ * tenth when the average database connection wait or the processing latency exceeds its target (additive increase,
+ * multiplicative decrease), so the consumer follows the capacity of the database instead of queueing on the pool.
+ * Messages over the limit wait, unprocessed, for a message in flight to complete. The limit is exposed as the
+ * {@code stock.increment.in.flight.limit} gauge.
+ *
+ * @see ItemMqpController
+ */
+@ApplicationScoped
+public class IncrementStockLimiter {
+
+    /**
+     * Factor applied to the limit when the database is overloaded
+     */
+    static final double DECREASE = 0.9;
+
+    private final ConnectionWaitMonitor connectionWaits;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetConnectionWaitNanos;
+    private final long targetLatencyNanos;
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private long completionsSinceDecrease;
+
+    @Inject
+    public IncrementStockLimiter(ConnectionWaitMonitor connectionWaits, MeterRegistry registry,
+                                 @ConfigProperty(name = "stock-service.increment-stock.min-in-flight", defaultValue = "1") int minLimit,
+                                 @ConfigProperty(name = "stock-service.increment-stock.max-in-flight", defaultValue = "256") int maxLimit,
+                                 @ConfigProperty(name = "stock-service.increment-stock.initial-in-flight", defaultValue = "16") int initialLimit,
+                                 @ConfigProperty(name = "stock-service.increment-stock.target-connection-wait", defaultValue = "10ms") Duration targetConnectionWait,
+                                 @ConfigProperty(name = "stock-service.increment-stock.target-latency", defaultValue = "100ms") Duration targetLatency) {
+        this.connectionWaits = connectionWaits;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetConnectionWaitNanos = targetConnectionWait.toNanos();
+        this.targetLatencyNanos = targetLatency.toNanos();
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        Gauge.builder("stock.increment.in.flight.limit", this, IncrementStockLimiter::limit)
+                .description("Number of increment stock messages that may be processed concurrently")
+                .register(registry);
+        Gauge.builder("stock.increment.in.flight", this, IncrementStockLimiter::inFlight)
+                .description("Number of increment stock messages being processed")
+                .register(registry);
+        Gauge.builder("stock.increment.waiting", this, IncrementStockLimiter::waiting)
+                .description("Number of increment stock messages waiting for the limit")
+                .register(registry);
+    }
+
+    /**
+     * Process a message once the limit allows it
+     * <p>
+     * The processing runs on a new duplicated context of the caller's Vert.x context, so that it gets its own
+     * Hibernate session and request trace even when it is started by the completion of another message.
+     *
+     * @param work the processing of the message
+     * @return a {@link Uni} with the result of the processing
+     */
+    public <T> Uni<T> run(Supplier<Uni<T>> work) {
+        return Uni.createFrom().emitter(emitter -> {
+            Context context = Vertx.currentContext();
+            Runnable start = () -> {
+                long startNanos = System.nanoTime();
+                runOn(context, () -> Uni.createFrom().deferred(work).subscribe().with(
+                        item -> {
+                            release(System.nanoTime() - startNanos);
+                            emitter.complete(item);
+                        },
+                        failure -> {
+                            release(System.nanoTime() - startNanos);
+                            emitter.fail(failure);
+                        }));
+            };
+            if (acquire(start)) {
+                start.run();
+            }
+        });
+    }
+
+    /**
+     * Get the highest limit, which bounds the messages requested from the channel
+     *
+     * @return the highest limit
+     */
+    public int maxLimit() {
+        return maxLimit;
+    }
+
+    synchronized double limit() {
+        return limit;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    synchronized int waiting() {
+        return waiting.size();
+    }
+
+    synchronized boolean acquire(Runnable start) {
+        if (inFlight < (int) limit) {
+            inFlight++;
+            return true;
+        }
+        waiting.add(start);
+        return false;
+    }
+
+    void release(long latencyNanos) {
+        List<Runnable> started = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            adjust(latencyNanos);
+            while (inFlight < (int) limit && !waiting.isEmpty()) {
+                inFlight++;
+                started.add(waiting.poll());
+            }
+        }
+        started.forEach(Runnable::run);
+    }
+
+    private void adjust(long latencyNanos) {
+        completionsSinceDecrease++;
+        if (connectionWaits.averageNanos() > targetConnectionWaitNanos || latencyNanos > targetLatencyNanos) {
+            // All the messages in flight see the same overload, only decrease once per round of completions
+            if (completionsSinceDecrease >= limit) {
+                limit = Math.max(minLimit, limit * DECREASE);
+                completionsSinceDecrease = 0;
+            }
+        } else if (!waiting.isEmpty() || inFlight + 1 >= (int) limit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    private static void runOn(Context context, Runnable task) {
+        if (context == null) {
+            task.run();
+        } else {
+            VertxContext.createNewDuplicatedContext(context).runOnContext(v -> task.run());
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.open.su.controllers;
+
+import com.open.su.*;
+import com.open.su.exceptions.ItemServiceException;
+import com.open.su.tracing.RequestTracer;
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.Status;
+import io.quarkus.grpc.GrpcService;
+import io.quarkus.panache.common.Page;
+import io.quarkus.panache.common.Sort;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import jakarta.inject.Inject;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.util.UUID;
+
+@GrpcService
+public class ItemExtendedGrpcController implements ItemExtendedGrpc {
+
+    private static final Logger LOGGER = Logger.getLogger(ItemExtendedGrpcController.class);
+
+    private final ItemService itemService;
+    private final ItemDetailsCache itemDetailsCache;
+    private final RequestTracer tracer;
+
+    @Inject
+    public ItemExtendedGrpcController(ItemService itemService, ItemDetailsCache itemDetailsCache, RequestTracer tracer) {
+        this.itemService = itemService;
+        this.itemDetailsCache = itemDetailsCache;
+        this.tracer = tracer;
+    }
+
+    /**
+     * Delete items in bulk.
+     *
+     * @param request the stream of gRPC requests
+     * @return the delete items response
+     */
+    @Override
+    public Uni<DeleteItemsResponse> deleteItems(Multi<DeleteItemsRequest> request) {
+        Multi<UUID> ids = request.onItem().transformToIterable(DeleteItemsRequest::getIdsList).map(UUID::fromString);
+        return tracer.trace("DeleteItems", () -> itemService.deleteItems(ids, Context.current().getDeadline())
+                        .onFailure().transform(t -> {
+                            if (t instanceof ItemServiceException serviceException) {
+                                return (serviceException.toGrpcException());
+                            }
+                            String message = "Unhandled error while deleting items";
+                            LOGGER.error(message, t);
+                            return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
+                        })
+                        .onItem().transform(result -> DeleteItemsResponse.newBuilder()
+                                .setDeletedCount(result.getItem1())
+                                .addAllMissingIds(result.getItem2().stream().map(UUID::toString).toList())
+                                .build()));
+    }
+
+    /**
+     * Increment the stock of an item in a location
+     *
+     * @param request the gRPC request
+     * @return the increment item location stock response
+     */
+    @Override
+    public Uni<IncrementItemLocationStockResponse> incrementItemLocationStock(IncrementItemLocationStockRequest request) {
+        String location = request.hasLocation() ? request.getLocation() : null;
+        return tracer.trace("IncrementItemLocationStock", () -> itemService.incrementItemStock(UUID.fromString(request.getId()), location, request.getQuantity(), Context.current().getDeadline())
+                .onFailure().transform(t -> {
+                    if (t instanceof ItemServiceException serviceException) {
+                        return (serviceException.toGrpcException());
+                    }
+                    String message = "Unhandled error while incrementing item location stock";
+                    LOGGER.error(message, t);
+                    return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
+                })
+                .onItem().transform(result -> {
+                    IncrementItemLocationStockResponse.Builder builder = IncrementItemLocationStockResponse.newBuilder()
+                            .setId(result.getItem1().toString())
+                            .setStock(result.getItem2());
+                    if (location != null) {
+                        builder.setLocation(location);
+                    }
+                    return builder.build();
+                }));
+    }
+
+    /**
+     * Get the stock of an item in a location, or across all its locations
+     *
+     * @param request the gRPC request
+     * @return the get item stock response
+     */
+    @Override
+    public Uni<GetItemStockResponse> getItemStock(GetItemStockRequest request) {
+        String location = request.hasLocation() ? request.getLocation() : null;
+        return tracer.trace("GetItemStock", () -> itemService.getItemStock(UUID.fromString(request.getId()), location, Context.current().getDeadline())
+                .onFailure().transform(t -> {
+                    if (t instanceof ItemServiceException serviceException) {
+                        return (serviceException.toGrpcException());
+                    }
+                    String message = "Unhandled error while getting item stock";
+                    LOGGER.error(message, t);
+                    return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
+                })
+                .onItem().transform(ItemStock::toGetItemStockResponse));
+    }
+
+    /**
+     * Get a paginated list of items with only the fields of the field mask.
+     *
+     * @param request the gRPC request
+     * @return the partial items
+     */
+    @Override
+    public Multi<PartialItem> listPartialItems(ListPartialItemsRequest request) {
+        Page page = Page.of(request.hasPage() ? request.getPage() : 0, request.hasSize() ? request.getSize() : 10);
+        Sort sort = Sort.by(request.hasSort() ? request.getSort() : "stock", request.hasOrder() ? Sort.Direction.valueOf(request.getOrder()) : Sort.Direction.Ascending);
+
+        return tracer.trace("ListPartialItems", () -> Uni.createFrom().item(() -> ItemFields.of(request.getFieldMask().getPathsList()))
+                        .onItem().transformToUni(fields -> itemService.listItems(page, sort, fields, Context.current().getDeadline())
+                                .onItem().transform(items -> items.stream().map(fields::toPartialItem).toList()))
+                        .onFailure().transform(t -> {
+                            if (t instanceof ItemServiceException serviceException) {
+                                return (serviceException.toGrpcException());
+                            }
+                            String message = "Unhandled error while listing items";
+                            LOGGER.error(message, t);
+                            return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
+                        }))
+                .onItem().transformToMulti(items -> Multi.createFrom().iterable(items));
+    }
+
+    /**
+     * Get an item by its ID with only the fields of the field mask.
+     * <p>
+     * A cached response of the item is trimmed to the mask, otherwise only the fields of the mask are selected.
+     *
+     * @param request the gRPC request
+     * @return the partial item
+     */
+    @Override
+    public Uni<PartialItem> getPartialItemDetails(GetPartialItemDetailsRequest request) {
+        UUID id = UUID.fromString(request.getId());
+        Deadline deadline = Context.current().getDeadline();
+        return tracer.trace("GetPartialItemDetails", () -> Uni.createFrom().item(() -> ItemFields.of(request.getFieldMask().getPathsList()))
+                .onItem().transformToUni(fields -> {
+                    GetItemDetailsResponse cached = itemDetailsCache.getIfPresent(id);
+                    if (cached != null) {
+                        return Uni.createFrom().item(fields.toPartialItem(new Item(cached)));
+                    }
+                    return itemService.getItemDetails(id, fields, deadline)
+                            .onItem().transform(fields::toPartialItem);
+                })
+                .onFailure().transform(t -> {
+                    if (t instanceof ItemServiceException serviceException) {
+                        return (serviceException.toGrpcException());
+                    }
+                    String message = "Unhandled error while getting item details";
+                    LOGGER.error(message, t);
+                    return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
+                }));
+    }
+
+    /**
+     * Reserve stock of an item
+     *
+     * @param request the gRPC request
+     * @return the reserve item stock response
+     */
+    @Override
+    public Uni<ReserveItemStockResponse> reserveItemStock(ReserveItemStockRequest request) {
+        Duration ttl = request.hasTtl() ? Duration.ofSeconds(request.getTtl().getSeconds(), request.getTtl().getNanos()) : null;
+        return tracer.trace("ReserveItemStock", () -> itemService.reserveItemStock(UUID.fromString(request.getId()), request.getQuantity(), ttl, Context.current().getDeadline())
+                .onFailure().transform(t -> {
+                    if (t instanceof ItemServiceException serviceException) {
+                        return (serviceException.toGrpcException());
+                    }
+                    String message = "Unhandled error while reserving item stock";
+                    LOGGER.error(message, t);
+                    return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
+                })
+                .onItem().transform(Reservation::toReserveItemStockResponse));
+    }
+
+    /**
+     * Commit a reservation
+     *
+     * @param request the gRPC request
+     * @return the commit reservation response
+     */
+    @Override
+    public Uni<CommitReservationResponse> commitReservation(CommitReservationRequest request) {
+        return tracer.trace("CommitReservation", () -> itemService.commitReservation(UUID.fromString(request.getReservationId()), Context.current().getDeadline())
+                .onFailure().transform(t -> {
+                    if (t instanceof ItemServiceException serviceException) {
+                        return (serviceException.toGrpcException());
+                    }
+                    String message = "Unhandled error while committing reservation";
+                    LOGGER.error(message, t);
+                    return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
+                })
+                .onItem().transform(id -> CommitReservationResponse.newBuilder()
+                        .setReservationId(request.getReservationId())
+                        .setId(id.toString())
+                        .build()));
+    }
+
+    /**
+     * Release a reservation
+     *
+     * @param request the gRPC request
+     * @return the release reservation response
+     */
+    @Override
+    public Uni<ReleaseReservationResponse> releaseReservation(ReleaseReservationRequest request) {
+        return tracer.trace("ReleaseReservation", () -> itemService.releaseReservation(UUID.fromString(request.getReservationId()), Context.current().getDeadline())
+                .onFailure().transform(t -> {
+                    if (t instanceof ItemServiceException serviceException) {
+                        return (serviceException.toGrpcException());
+                    }
+                    String message = "Unhandled error while releasing reservation";
+                    LOGGER.error(message, t);
+                    return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
+                })
+                .onItem().transform(result -> {
+                    ReleaseReservationResponse.Builder builder = ReleaseReservationResponse.newBuilder()
+                            .setReservationId(request.getReservationId())
+                            .setId(result.getItem1().toString());
+                    if (result.getItem2() != null) {
+                        builder.setStock(result.getItem2());
+                    }
+                    return builder.build();
+                }));
+    }
+}
\ No newline at end of file
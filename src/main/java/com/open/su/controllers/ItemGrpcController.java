@@ -2,6 +2,9 @@ package com.open.su.controllers;
 
 import com.open.su.*;
 import com.open.su.exceptions.ItemServiceException;
+import com.open.su.tracing.RequestTracer;
+import io.grpc.Context;
+import io.grpc.Deadline;
 import io.grpc.Status;
 import io.quarkus.grpc.GrpcService;
 import io.quarkus.panache.common.Page;
@@ -19,10 +22,14 @@ public class ItemGrpcController implements ItemGrpc {
     private static final Logger LOGGER = Logger.getLogger(ItemGrpcController.class);
 
     private final ItemService itemService;
+    private final ItemDetailsCache itemDetailsCache;
+    private final RequestTracer tracer;
 
     @Inject
-    public ItemGrpcController(ItemService itemService) {
+    public ItemGrpcController(ItemService itemService, ItemDetailsCache itemDetailsCache, RequestTracer tracer) {
         this.itemService = itemService;
+        this.itemDetailsCache = itemDetailsCache;
+        this.tracer = tracer;
     }
 
     /**
@@ -36,17 +43,18 @@ public class ItemGrpcController implements ItemGrpc {
         Page page = Page.of(request.hasPage() ? request.getPage() : 0, request.hasSize() ? request.getSize() : 10);
         Sort sort = Sort.by(request.hasSort() ? request.getSort() : "stock", request.hasOrder() ? Sort.Direction.valueOf(request.getOrder()) : Sort.Direction.Ascending);
 
-        return itemService.listItems(page, sort)
-                .onFailure().transform(t -> {
-                    if (t instanceof ItemServiceException serviceException) {
-                        return (serviceException.toGrpcException());
-                    }
-                    String message = "Unhandled error while listing items";
-                    LOGGER.error(message, t);
-                    return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
-                })
-                .onItem().transformToMulti(items -> Multi.createFrom().iterable(items))
-                .map(Item::toListItemsResponse);
+        // The responses are built in the traced request, so their conversion is the response stage of the trace
+        return tracer.trace("ListItems", () -> itemService.listItems(page, sort, Context.current().getDeadline())
+                        .onItem().transform(items -> items.stream().map(Item::toListItemsResponse).toList())
+                        .onFailure().transform(t -> {
+                            if (t instanceof ItemServiceException serviceException) {
+                                return (serviceException.toGrpcException());
+                            }
+                            String message = "Unhandled error while listing items";
+                            LOGGER.error(message, t);
+                            return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
+                        }))
+                .onItem().transformToMulti(responses -> Multi.createFrom().iterable(responses));
     }
 
     /**
@@ -57,16 +65,18 @@ public class ItemGrpcController implements ItemGrpc {
      */
     @Override
     public Uni<GetItemDetailsResponse> getItemDetails(GetItemDetailsRequest request) {
-        return itemService.getItemDetails(UUID.fromString(request.getId()))
-                .onFailure().transform(t -> {
-                    if (t instanceof ItemServiceException serviceException) {
-                        return (serviceException.toGrpcException());
-                    }
-                    String message = "Unhandled error while getting item details";
-                    LOGGER.error(message, t);
-                    return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
-                })
-                .onItem().transform(Item::toGetItemDetailsResponse);
+        UUID id = UUID.fromString(request.getId());
+        Deadline deadline = Context.current().getDeadline();
+        return tracer.trace("GetItemDetails", () -> itemDetailsCache.get(id, deadline, loadDeadline -> itemService.getItemDetails(id, loadDeadline)
+                                .onItem().transform(Item::toGetItemDetailsResponse))
+                        .onFailure().transform(t -> {
+                            if (t instanceof ItemServiceException serviceException) {
+                                return (serviceException.toGrpcException());
+                            }
+                            String message = "Unhandled error while getting item details";
+                            LOGGER.error(message, t);
+                            return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
+                        }));
     }
 
     /**
@@ -77,16 +87,16 @@ public class ItemGrpcController implements ItemGrpc {
      */
     @Override
     public Uni<CreateItemResponse> createItem(CreateItemRequest request) {
-        return itemService.createItem(new Item(request))
-                .onFailure().transform(t -> {
-                    if (t instanceof ItemServiceException serviceException) {
-                        return (serviceException.toGrpcException());
-                    }
-                    String message = "Unhandled error while creating item";
-                    LOGGER.error(message, t);
-                    return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
-                })
-                .onItem().transform(id -> CreateItemResponse.newBuilder().setId(id.toString()).build());
+        return tracer.trace("CreateItem", () -> itemService.createItem(new Item(request), Context.current().getDeadline())
+                        .onFailure().transform(t -> {
+                            if (t instanceof ItemServiceException serviceException) {
+                                return (serviceException.toGrpcException());
+                            }
+                            String message = "Unhandled error while creating item";
+                            LOGGER.error(message, t);
+                            return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
+                        })
+                        .onItem().transform(id -> CreateItemResponse.newBuilder().setId(id.toString()).build()));
     }
 
     /**
@@ -97,16 +107,16 @@ public class ItemGrpcController implements ItemGrpc {
      */
     @Override
     public Uni<IncrementItemStockResponse> incrementItemStock(IncrementItemStockRequest request) {
-        return itemService.incrementItemStock(UUID.fromString(request.getId()), request.getQuantity())
-                .onFailure().transform(t -> {
-                    if (t instanceof ItemServiceException serviceException) {
-                        return (serviceException.toGrpcException());
-                    }
-                    String message = "Unhandled error while updating item";
-                    LOGGER.error(message, t);
-                    return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
-                })
-                .onItem().transform(tuple -> IncrementItemStockResponse.newBuilder().setId(tuple.getItem1().toString()).setStock(tuple.getItem2()).build());
+        return tracer.trace("IncrementItemStock", () -> itemService.incrementItemStock(UUID.fromString(request.getId()), request.getQuantity(), Context.current().getDeadline())
+                        .onFailure().transform(t -> {
+                            if (t instanceof ItemServiceException serviceException) {
+                                return (serviceException.toGrpcException());
+                            }
+                            String message = "Unhandled error while updating item";
+                            LOGGER.error(message, t);
+                            return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
+                        })
+                        .onItem().transform(tuple -> IncrementItemStockResponse.newBuilder().setId(tuple.getItem1().toString()).setStock(tuple.getItem2()).build()));
     }
 
     /**
@@ -117,16 +127,16 @@ public class ItemGrpcController implements ItemGrpc {
      */
     @Override
     public Uni<UpdateItemResponse> updateItem(UpdateItemRequest request) {
-        return itemService.updateItem(new Item(request))
-                .onFailure().transform(t -> {
-                    if (t instanceof ItemServiceException serviceException) {
-                        return (serviceException.toGrpcException());
-                    }
-                    String message = "Unhandled error while updating item";
-                    LOGGER.error(message, t);
-                    return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
-                })
-                .onItem().transform(id -> UpdateItemResponse.newBuilder().setId(id.toString()).build());
+        return tracer.trace("UpdateItem", () -> itemService.updateItem(new Item(request), Context.current().getDeadline())
+                        .onFailure().transform(t -> {
+                            if (t instanceof ItemServiceException serviceException) {
+                                return (serviceException.toGrpcException());
+                            }
+                            String message = "Unhandled error while updating item";
+                            LOGGER.error(message, t);
+                            return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
+                        })
+                        .onItem().transform(id -> UpdateItemResponse.newBuilder().setId(id.toString()).build()));
     }
 
     /**
@@ -137,15 +147,15 @@ public class ItemGrpcController implements ItemGrpc {
      */
     @Override
     public Uni<DeleteItemResponse> deleteItem(DeleteItemRequest request) {
-        return itemService.deleteItem(UUID.fromString(request.getId()))
-                .onFailure().transform(t -> {
-                    if (t instanceof ItemServiceException serviceException) {
-                        return (serviceException.toGrpcException());
-                    }
-                    String message = "Unhandled error while deleting item";
-                    LOGGER.error(message, t);
-                    return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
-                })
-                .onItem().transform(id -> DeleteItemResponse.newBuilder().build());
+        return tracer.trace("DeleteItem", () -> itemService.deleteItem(UUID.fromString(request.getId()), Context.current().getDeadline())
+                        .onFailure().transform(t -> {
+                            if (t instanceof ItemServiceException serviceException) {
+                                return (serviceException.toGrpcException());
+                            }
+                            String message = "Unhandled error while deleting item";
+                            LOGGER.error(message, t);
+                            return Status.UNKNOWN.withCause(t).withDescription(message).asRuntimeException();
+                        })
+                        .onItem().transform(id -> DeleteItemResponse.newBuilder().build()));
     }
 }
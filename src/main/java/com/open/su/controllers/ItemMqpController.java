@@ -2,15 +2,19 @@ package com.open.su.controllers;
 
 import com.open.su.ItemService;
 import com.open.su.controllers.models.IncrementStockErrorMessage;
+import com.open.su.controllers.models.IncrementStockFormat;
 import com.open.su.controllers.models.IncrementStockMessage;
 import com.open.su.controllers.models.IncrementStockSuccessMessage;
 import com.open.su.exceptions.ItemServiceException;
+import com.open.su.tracing.RequestTracer;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
-import io.smallrye.reactive.messaging.Targeted;
-import io.vertx.core.json.JsonObject;
+import io.smallrye.reactive.messaging.TargetedMessages;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import org.eclipse.microprofile.reactive.messaging.Incoming;
+import org.eclipse.microprofile.reactive.messaging.Message;
+import org.eclipse.microprofile.reactive.messaging.Metadata;
 import org.eclipse.microprofile.reactive.messaging.Outgoing;
 import org.jboss.logging.Logger;
 
@@ -18,42 +22,84 @@ import org.jboss.logging.Logger;
 public class ItemMqpController {
     private static final Logger LOGGER = Logger.getLogger(ItemMqpController.class);
     private final ItemService itemService;
+    private final RequestTracer tracer;
+    private final IncrementStockLimiter limiter;
 
     @Inject
-    public ItemMqpController(ItemService itemService) {
+    public ItemMqpController(ItemService itemService, RequestTracer tracer, IncrementStockLimiter limiter) {
         this.itemService = itemService;
+        this.tracer = tracer;
+        this.limiter = limiter;
     }
 
     /**
-     * Update stock of an item
+     * Update stock of items
+     * <p>
+     * Messages are processed concurrently, up to the adaptive limit of {@link IncrementStockLimiter}, and results are
+     * sent in completion order. The broker prefetch ({@code max-outstanding-messages}) only bounds the unacknowledged
+     * messages, it cannot be changed once the consumer is subscribed. Since the method consumes and produces messages,
+     * acknowledging the incoming messages is left to it, see {@link #reply}.
      *
-     * @param message the message
-     * @return a {@link Uni} of {@link Void}
+     * @param messages the stream of messages
+     * @return a {@link Multi} of {@link TargetedMessages}
      */
     @Incoming("increment-stock-in")
     @Outgoing("increment-stock-out")
     @Outgoing("increment-stock-error")
-    public Uni<Targeted> incrementStock(JsonObject message) {
-        IncrementStockMessage incrementStockMessage = message.mapTo(IncrementStockMessage.class);
-        return itemService.incrementItemStock(incrementStockMessage.itemId(), incrementStockMessage.quantity())
-                .onItem().transformToUni(t -> Uni.createFrom().item(Targeted.of("increment-stock-out", new IncrementStockSuccessMessage(t.getItem1(), t.getItem2()))))
-                .onFailure().recoverWithUni(t -> {
+    public Multi<TargetedMessages> incrementStock(Multi<Message<?>> messages) {
+        return messages.onItem().transformToUni(message -> limiter.run(() -> incrementStock(message)))
+                .merge(limiter.maxLimit());
+    }
+
+    /**
+     * Update stock of an item
+     * <p>
+     * The format of the message (JSON or protobuf) is chosen from its content type, and the result is sent in the same
+     * format. The incoming message is acknowledged once the result is acknowledged, which the RabbitMQ connector does
+     * when the broker confirms its publication ({@code publish-confirms}). The connector keeps up to the
+     * {@code max-inflight-messages} of the channel unconfirmed.
+     *
+     * @param message the message
+     * @return a {@link Uni} of {@link TargetedMessages}, or of {@code null} if the message is rejected
+     */
+    Uni<TargetedMessages> incrementStock(Message<?> message) {
+        IncrementStockFormat format = IncrementStockFormat.of(message);
+        IncrementStockMessage incrementStockMessage;
+        try {
+            incrementStockMessage = format.decode(message.getPayload());
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid increment stock message", e);
+            return Uni.createFrom().completionStage(message.nack(e)).replaceWithNull();
+        }
+        return tracer.trace("IncrementStockMessage", () -> itemService.incrementItemStock(incrementStockMessage.itemId(), incrementStockMessage.quantity()))
+                .onItem().transform(t -> reply(message, format, "increment-stock-out", format.encode(new IncrementStockSuccessMessage(t.getItem1(), t.getItem2()))))
+                .onFailure().recoverWithItem(t -> {
                     final String errorExchangeName = "increment-stock-error";
+                    IncrementStockErrorMessage.Type type = IncrementStockErrorMessage.Type.UNEXPECTED_ERROR;
                     if (t instanceof ItemServiceException itemServiceException) {
-                        return switch (itemServiceException.getType()) {
-                            case NOT_FOUND ->
-                                    Uni.createFrom().item(Targeted.of(errorExchangeName, new IncrementStockErrorMessage(t, IncrementStockErrorMessage.Type.ITEM_NOT_FOUND, incrementStockMessage.itemId())));
-                            case INVALID_ARGUMENT ->
-                                    Uni.createFrom().item(Targeted.of(errorExchangeName, new IncrementStockErrorMessage(t, IncrementStockErrorMessage.Type.INVALID_QUANTITY, incrementStockMessage.itemId())));
-                            default -> {
-                                LOGGER.error("Unexpected error during stock increment", t);
-                                yield Uni.createFrom().item(Targeted.of(errorExchangeName, new IncrementStockErrorMessage(t, IncrementStockErrorMessage.Type.UNEXPECTED_ERROR, incrementStockMessage.itemId())));
-                            }
+                        type = switch (itemServiceException.getType()) {
+                            case NOT_FOUND -> IncrementStockErrorMessage.Type.ITEM_NOT_FOUND;
+                            case INVALID_ARGUMENT -> IncrementStockErrorMessage.Type.INVALID_QUANTITY;
+                            default -> IncrementStockErrorMessage.Type.UNEXPECTED_ERROR;
                         };
-                    } else {
+                    }
+                    if (type == IncrementStockErrorMessage.Type.UNEXPECTED_ERROR) {
                         LOGGER.error("Unexpected error during stock increment", t);
-                        return Uni.createFrom().item(Targeted.of(errorExchangeName, new IncrementStockErrorMessage(t, IncrementStockErrorMessage.Type.UNEXPECTED_ERROR, incrementStockMessage.itemId())));
                     }
+                    return reply(message, format, errorExchangeName, format.encode(new IncrementStockErrorMessage(t.getMessage(), type, incrementStockMessage.itemId())));
                 });
     }
+
+    /**
+     * Build the result of an increment, acknowledging the incoming message when the result is acknowledged
+     *
+     * @param message the incoming message
+     * @param format  the format of the incoming message
+     * @param channel the outgoing channel of the result
+     * @param payload the encoded result
+     * @return the targeted result
+     */
+    TargetedMessages reply(Message<?> message, IncrementStockFormat format, String channel, Object payload) {
+        return TargetedMessages.of(channel, Message.of(payload, Metadata.of(format.outgoingMetadata()), message::ack, message::nack));
+    }
 }
@@ -1,8 +1,35 @@
 package com.open.su.controllers.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collections;
+import java.util.Map;
 import java.util.UUID;
 
-public record IncrementStockErrorMessage(Throwable throwable, Type type, UUID itemId) {
+/**
+ * Message sent to the message queue when a stock increment fails.
+ * <p>
+ * Only the error message is carried, without the stack trace, to keep the payload small. JSON payloads still carry it
+ * as {@code throwable.message} as well, for the consumers written against the previous payload.
+ *
+ * @see com.open.su.controllers.ItemMqpController
+ */
+@JsonIgnoreProperties(value = "throwable", allowGetters = true)
+public record IncrementStockErrorMessage(String message, Type type, UUID itemId) {
+
+    /**
+     * Get the error message in the shape of the serialized {@link Throwable} sent by previous versions
+     *
+     * @return an object holding the error message
+     * @deprecated read {@link #message()} instead
+     */
+    @Deprecated
+    @JsonProperty("throwable")
+    public Map<String, String> throwable() {
+        return Collections.singletonMap("message", message);
+    }
+
     public enum Type {
         ITEM_NOT_FOUND,
         INVALID_QUANTITY,
@@ -0,0 +1,160 @@
+package com.open.su.controllers.models;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.open.su.controllers.models.proto.IncrementStock;
+import com.open.su.controllers.models.proto.IncrementStockError;
+import com.open.su.controllers.models.proto.IncrementStockSuccess;
+import io.smallrye.reactive.messaging.rabbitmq.IncomingRabbitMQMetadata;
+import io.smallrye.reactive.messaging.rabbitmq.OutgoingRabbitMQMetadata;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import org.eclipse.microprofile.reactive.messaging.Message;
+
+import java.util.UUID;
+
+/**
+ * Wire formats of the increment stock messages, chosen by the content type of the incoming message.
+ * <p>
+ * Results are sent in the format of the increment they answer, so JSON producers keep receiving JSON.
+ *
+ * @see com.open.su.controllers.ItemMqpController
+ */
+public enum IncrementStockFormat {
+    JSON("application/json") {
+        @Override
+        public IncrementStockMessage decode(Object payload) {
+            IncrementStockMessage message;
+            try {
+                JsonObject json = payload instanceof JsonObject jsonObject ? jsonObject : new JsonObject(toBuffer(payload));
+                message = json.mapTo(IncrementStockMessage.class);
+            } catch (DecodeException e) {
+                throw new IllegalArgumentException("Invalid JSON increment stock message", e);
+            }
+            if (message.itemId() == null || message.quantity() == null) {
+                throw new IllegalArgumentException("Increment stock message without itemId or quantity");
+            }
+            return message;
+        }
+
+        @Override
+        public Object encode(IncrementStockSuccessMessage message) {
+            return JsonObject.mapFrom(message);
+        }
+
+        @Override
+        public Object encode(IncrementStockErrorMessage message) {
+            return JsonObject.mapFrom(message);
+        }
+    },
+    PROTOBUF("application/x-protobuf") {
+        @Override
+        public IncrementStockMessage decode(Object payload) {
+            IncrementStock message;
+            try {
+                message = IncrementStock.parseFrom(toBuffer(payload).getBytes());
+            } catch (InvalidProtocolBufferException e) {
+                throw new IllegalArgumentException("Invalid protobuf increment stock message", e);
+            }
+            // Absent fields decode to zero, so an empty or foreign message would otherwise increment the nil UUID by 0
+            if (message.getItemIdMsb() == 0 && message.getItemIdLsb() == 0 || message.getQuantity() == 0) {
+                throw new IllegalArgumentException("Increment stock message without itemId or quantity");
+            }
+            return new IncrementStockMessage(new UUID(message.getItemIdMsb(), message.getItemIdLsb()), message.getQuantity());
+        }
+
+        @Override
+        public Object encode(IncrementStockSuccessMessage message) {
+            return IncrementStockSuccess.newBuilder()
+                    .setItemIdMsb(message.itemId().getMostSignificantBits())
+                    .setItemIdLsb(message.itemId().getLeastSignificantBits())
+                    .setStock(message.stock())
+                    .build().toByteArray();
+        }
+
+        @Override
+        public Object encode(IncrementStockErrorMessage message) {
+            IncrementStockError.Builder builder = IncrementStockError.newBuilder()
+                    .setType(IncrementStockError.Type.valueOf(message.type().name()));
+            if (message.itemId() != null) {
+                builder.setItemIdMsb(message.itemId().getMostSignificantBits())
+                        .setItemIdLsb(message.itemId().getLeastSignificantBits());
+            }
+            if (message.message() != null) {
+                builder.setMessage(message.message());
+            }
+            return builder.build().toByteArray();
+        }
+    };
+
+    private final String contentType;
+
+    IncrementStockFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * Get the format of an incoming message from its content type, JSON being the default
+     *
+     * @param message the incoming message
+     * @return the format of the message
+     */
+    public static IncrementStockFormat of(Message<?> message) {
+        return message.getMetadata(IncomingRabbitMQMetadata.class)
+                .flatMap(IncomingRabbitMQMetadata::getContentType)
+                .filter(contentType -> contentType.startsWith(PROTOBUF.contentType))
+                .map(contentType -> PROTOBUF)
+                .orElse(JSON);
+    }
+
+    private static Buffer toBuffer(Object payload) {
+        if (payload instanceof Buffer buffer) {
+            return buffer;
+        }
+        if (payload instanceof byte[] bytes) {
+            return Buffer.buffer(bytes);
+        }
+        if (payload instanceof String string) {
+            return Buffer.buffer(string);
+        }
+        throw new IllegalArgumentException("Unsupported increment stock payload " + (payload == null ? null : payload.getClass()));
+    }
+
+    /**
+     * Decode an incoming increment
+     *
+     * @param payload the payload of the incoming message
+     * @return the increment
+     * @throws IllegalArgumentException if the payload cannot be decoded
+     */
+    public abstract IncrementStockMessage decode(Object payload);
+
+    /**
+     * Encode a successful increment result
+     *
+     * @param message the result
+     * @return the payload of the outgoing message
+     */
+    public abstract Object encode(IncrementStockSuccessMessage message);
+
+    /**
+     * Encode a failed increment result
+     *
+     * @param message the result
+     * @return the payload of the outgoing message
+     */
+    public abstract Object encode(IncrementStockErrorMessage message);
+
+    /**
+     * Get the metadata of the outgoing messages in this format
+     *
+     * @return the outgoing metadata
+     */
+    public OutgoingRabbitMQMetadata outgoingMetadata() {
+        return OutgoingRabbitMQMetadata.builder().withContentType(contentType).build();
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+}
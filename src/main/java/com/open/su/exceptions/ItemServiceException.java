@@ -24,6 +24,16 @@ public class ItemServiceException extends RuntimeException {
      */
     public static final ItemServiceException INVALID_ARGUMENT = new ItemServiceException(Type.INVALID_ARGUMENT, "Invalid argument");
 
+    /**
+     * Predefined exception for expired caller deadlines.
+     */
+    public static final ItemServiceException DEADLINE_EXCEEDED = new ItemServiceException(Type.DEADLINE_EXCEEDED, "Deadline exceeded");
+
+    /**
+     * Predefined exception for operations the configured storage does not support.
+     */
+    public static final ItemServiceException UNIMPLEMENTED = new ItemServiceException(Type.UNIMPLEMENTED, "Unimplemented");
+
     final Type type;
 
     ItemServiceException(Type type, String message) {
@@ -62,6 +72,10 @@ public class ItemServiceException extends RuntimeException {
                     Status.ALREADY_EXISTS.withDescription(getMessage()).withCause(getCause()).asRuntimeException();
             case INVALID_ARGUMENT ->
                     Status.INVALID_ARGUMENT.withDescription(getMessage()).withCause(getCause()).asRuntimeException();
+            case DEADLINE_EXCEEDED ->
+                    Status.DEADLINE_EXCEEDED.withDescription(getMessage()).withCause(getCause()).asRuntimeException();
+            case UNIMPLEMENTED ->
+                    Status.UNIMPLEMENTED.withDescription(getMessage()).withCause(getCause()).asRuntimeException();
         };
     }
 
@@ -72,6 +86,8 @@ public class ItemServiceException extends RuntimeException {
         DATABASE_ERROR,
         NOT_FOUND,
         CONFLICT,
-        INVALID_ARGUMENT
+        INVALID_ARGUMENT,
+        DEADLINE_EXCEEDED,
+        UNIMPLEMENTED
     }
 }
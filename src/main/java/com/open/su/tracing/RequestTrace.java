@@ -0,0 +1,119 @@
+package com.open.su.tracing;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timestamps of the stages of a sampled request.
+ * <p>
+ * Each {@link #mark(String)} closes the stage that started at the previous mark (or at the start of the request), so the
+ * stages add up to the total duration of the request. Requests that are not sampled use {@link #NONE}, which records
+ * nothing, and are only reported with their duration when they are slow, see {@link #unsampled}.
+ *
+ * @see RequestTracer
+ */
+public class RequestTrace {
+
+    /**
+     * Trace of the requests that are not sampled
+     */
+    public static final RequestTrace NONE = new RequestTrace(null) {
+        @Override
+        public void mark(String stage) {
+        }
+    };
+
+    final String operation;
+    final long startEpochNanos;
+    final long startNanos;
+    final boolean sampled;
+    final List<Stage> stages = new ArrayList<>();
+    long endNanos;
+    Throwable failure;
+
+    RequestTrace(String operation) {
+        this(operation, epochNanos(Instant.now()), System.nanoTime(), true);
+    }
+
+    private RequestTrace(String operation, long startEpochNanos, long startNanos, boolean sampled) {
+        this.operation = operation;
+        this.startEpochNanos = startEpochNanos;
+        this.startNanos = startNanos;
+        this.sampled = sampled;
+    }
+
+    /**
+     * Create the trace of a request that was not sampled, without stages
+     *
+     * @param operation  the name of the operation
+     * @param startNanos the {@link System#nanoTime()} at the start of the request
+     * @param endNanos   the {@link System#nanoTime()} at the end of the request
+     * @param failure    the failure of the request, if any
+     * @return the trace of the request
+     */
+    static RequestTrace unsampled(String operation, long startNanos, long endNanos, Throwable failure) {
+        long startEpochNanos = epochNanos(Instant.now()) - (System.nanoTime() - startNanos);
+        RequestTrace trace = new RequestTrace(operation, startEpochNanos, startNanos, false);
+        trace.endNanos = endNanos;
+        trace.failure = failure;
+        return trace;
+    }
+
+    private static long epochNanos(Instant instant) {
+        return TimeUnit.SECONDS.toNanos(instant.getEpochSecond()) + instant.getNano();
+    }
+
+    /**
+     * Close the current stage of the request
+     *
+     * @param stage the name of the stage that just ended
+     */
+    public void mark(String stage) {
+        stages.add(new Stage(stage, System.nanoTime()));
+    }
+
+    void finish(String lastStage, Throwable failure) {
+        mark(lastStage);
+        this.endNanos = System.nanoTime();
+        this.failure = failure;
+    }
+
+    long durationNanos() {
+        return endNanos - startNanos;
+    }
+
+    /**
+     * Convert the trace to the structured form of the slow request log
+     *
+     * @return the trace as JSON
+     */
+    JsonObject toJson() {
+        JsonArray stagesJson = new JsonArray();
+        long previous = startNanos;
+        for (Stage stage : stages) {
+            stagesJson.add(new JsonObject().put("stage", stage.name()).put("ms", (stage.endNanos() - previous) / 1_000_000d));
+            previous = stage.endNanos();
+        }
+        return new JsonObject()
+                .put("operation", operation)
+                .put("start", Instant.ofEpochSecond(0, startEpochNanos).toString())
+                .put("ms", durationNanos() / 1_000_000d)
+                .put("failure", failure == null ? null : failure.getClass().getSimpleName())
+                .put("sampled", sampled)
+                .put("stages", stagesJson);
+    }
+
+    /**
+     * End of a stage of the request
+     *
+     * @param name     the name of the stage
+     * @param endNanos the {@link System#nanoTime()} at the end of the stage
+     */
+    record Stage(String name, long endNanos) {
+    }
+}
@@ -0,0 +1,121 @@
+package com.open.su.tracing;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.smallrye.common.vertx.ContextLocals;
+import io.smallrye.common.vertx.VertxContext;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Tracing of the slow requests, with a per-stage latency breakdown for a sample of them.
+ * <p>
+ * Every request is timed, and requests slower than {@code stock-service.tracing.slow-threshold} are written to the
+ * {@code com.open.su.slow-requests} log, and exported as OpenTelemetry spans when {@code stock-service.tracing.export}
+ * is enabled. A sampled request also carries a {@link RequestTrace} in its Vert.x context, in which
+ * {@link com.open.su.ItemService} marks the end of each stage (connection, statements, commit). Requests that are not
+ * sampled only pay for the sampling decision and two clock reads, and are reported without stages.
+ */
+@ApplicationScoped
+public class RequestTracer {
+
+    private static final Logger SLOW_REQUESTS = Logger.getLogger("com.open.su.slow-requests");
+
+    private static final String KEY = RequestTrace.class.getName();
+
+    private final double sampleRate;
+    private final long slowThresholdNanos;
+    private final boolean export;
+    private final Tracer tracer;
+
+    @Inject
+    public RequestTracer(@ConfigProperty(name = "stock-service.tracing.sample-rate", defaultValue = "0.01") double sampleRate,
+                         @ConfigProperty(name = "stock-service.tracing.slow-threshold", defaultValue = "500ms") Duration slowThreshold,
+                         @ConfigProperty(name = "stock-service.tracing.export", defaultValue = "false") boolean export,
+                         Tracer tracer) {
+        this.sampleRate = sampleRate;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.export = export;
+        this.tracer = tracer;
+    }
+
+    /**
+     * Time a request, and trace its stages if it is sampled
+     *
+     * @param operation the name of the operation
+     * @param request   the request
+     * @return a {@link Uni} with the result of the request
+     */
+    public <T> Uni<T> trace(String operation, Supplier<Uni<T>> request) {
+        if (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate || !VertxContext.isOnDuplicatedContext()) {
+            long startNanos = System.nanoTime();
+            return request.get()
+                    .onTermination().invoke((item, failure, cancelled) -> {
+                        long endNanos = System.nanoTime();
+                        // The trace is only built for the slow requests, to keep the fast path free of allocations
+                        if (endNanos - startNanos >= slowThresholdNanos) {
+                            report(RequestTrace.unsampled(operation, startNanos, endNanos, failure));
+                        }
+                    });
+        }
+        RequestTrace trace = new RequestTrace(operation);
+        ContextLocals.put(KEY, trace);
+        return request.get()
+                .onTermination().invoke((item, failure, cancelled) -> {
+                    ContextLocals.remove(KEY);
+                    trace.finish("response", failure);
+                    report(trace);
+                });
+    }
+
+    /**
+     * Get the trace of the current request
+     *
+     * @return the trace of the current request, or {@link RequestTrace#NONE} if it is not sampled
+     */
+    public RequestTrace current() {
+        if (!VertxContext.isOnDuplicatedContext()) {
+            return RequestTrace.NONE;
+        }
+        return ContextLocals.<RequestTrace>get(KEY).orElse(RequestTrace.NONE);
+    }
+
+    void report(RequestTrace trace) {
+        if (trace.durationNanos() < slowThresholdNanos) {
+            return;
+        }
+        SLOW_REQUESTS.warn(trace.toJson().encode());
+        if (export) {
+            export(trace);
+        }
+    }
+
+    void export(RequestTrace trace) {
+        Span span = tracer.spanBuilder(trace.operation)
+                .setStartTimestamp(trace.startEpochNanos, TimeUnit.NANOSECONDS)
+                .startSpan();
+        long previous = trace.startNanos;
+        for (RequestTrace.Stage stage : trace.stages) {
+            tracer.spanBuilder(stage.name())
+                    .setParent(Context.root().with(span))
+                    .setStartTimestamp(trace.startEpochNanos + previous - trace.startNanos, TimeUnit.NANOSECONDS)
+                    .startSpan()
+                    .end(trace.startEpochNanos + stage.endNanos() - trace.startNanos, TimeUnit.NANOSECONDS);
+            previous = stage.endNanos();
+        }
+        if (trace.failure != null) {
+            span.setStatus(StatusCode.ERROR, trace.failure.getClass().getSimpleName());
+        }
+        span.end(trace.startEpochNanos + trace.durationNanos(), TimeUnit.NANOSECONDS);
+    }
+}
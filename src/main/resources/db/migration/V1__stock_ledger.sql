@@ -0,0 +1,34 @@
+-- Append-only ledger of the stock mutations, partitioned by month (see StockLedger)
+CREATE TABLE IF NOT EXISTS stock_movement (
+    item_id uuid NOT NULL,
+    location varchar(64),
+    delta bigint NOT NULL,
+    stock bigint NOT NULL,
+    kind varchar(16) NOT NULL,
+    created_at timestamptz NOT NULL DEFAULT clock_timestamp(),
+    xact_id xid8 NOT NULL DEFAULT pg_current_xact_id()
+) PARTITION BY RANGE (created_at);
+
+-- Columns added to the ledgers created before the migrations
+ALTER TABLE stock_movement ADD COLUMN IF NOT EXISTS xact_id xid8 NOT NULL DEFAULT pg_current_xact_id();
+ALTER TABLE stock_movement ADD COLUMN IF NOT EXISTS location varchar(64);
+
+-- The monthly partitions are created by the application, ahead of time
+CREATE TABLE IF NOT EXISTS stock_movement_default PARTITION OF stock_movement DEFAULT;
+
+CREATE INDEX IF NOT EXISTS stock_movement_item_idx ON stock_movement (item_id, created_at);
+CREATE INDEX IF NOT EXISTS stock_movement_xact_idx ON stock_movement (xact_id);
+
+CREATE TABLE IF NOT EXISTS stock_snapshot (
+    item_id uuid NOT NULL,
+    stock bigint NOT NULL,
+    taken_at timestamptz NOT NULL,
+    PRIMARY KEY (item_id, taken_at)
+);
+
+CREATE TABLE IF NOT EXISTS stock_snapshot_mark (
+    singleton boolean PRIMARY KEY DEFAULT true CHECK (singleton),
+    xact_id xid8 NOT NULL
+);
+
+INSERT INTO stock_snapshot_mark (xact_id) VALUES ('0') ON CONFLICT DO NOTHING;
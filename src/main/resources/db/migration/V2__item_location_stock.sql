@@ -0,0 +1,18 @@
+-- Stock of the items in each location, hash partitioned by location (see ItemLocationStock)
+CREATE TABLE IF NOT EXISTS item_location_stock (
+    item_id uuid NOT NULL,
+    location varchar(64) NOT NULL,
+    stock bigint NOT NULL,
+    updated_at timestamp(6),
+    PRIMARY KEY (item_id, location)
+) PARTITION BY HASH (location);
+
+-- The number of partitions is stock-service.locations.partitions, it cannot change once the partitions exist
+DO $$
+BEGIN
+    FOR remainder IN 0..${location_partitions} - 1 LOOP
+        EXECUTE format('CREATE TABLE IF NOT EXISTS item_location_stock_p%s PARTITION OF item_location_stock FOR VALUES WITH (MODULUS %s, REMAINDER %s)',
+                       remainder, ${location_partitions}, remainder);
+    END LOOP;
+END
+$$;
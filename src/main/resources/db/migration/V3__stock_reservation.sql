@@ -0,0 +1,20 @@
+-- Reservations of item stock (see StockReservations)
+CREATE TABLE IF NOT EXISTS stock_reservation (
+    id uuid PRIMARY KEY,
+    item_id uuid NOT NULL,
+    quantity bigint NOT NULL,
+    expires_at timestamp(6) NOT NULL,
+    created_at timestamp(6) NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS stock_reservation_item_idx ON stock_reservation (item_id);
+
+-- Quantity held by the reservations of an item, the item table is created with the column when it is generated from
+-- the entity
+DO $$
+BEGIN
+    IF to_regclass('item') IS NOT NULL THEN
+        ALTER TABLE item ADD COLUMN IF NOT EXISTS reserved bigint NOT NULL DEFAULT 0;
+    END IF;
+END
+$$;
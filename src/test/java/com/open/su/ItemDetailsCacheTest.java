@@ -0,0 +1,149 @@
+package com.open.su;
+
+import com.open.su.exceptions.ItemServiceException;
+import io.grpc.Deadline;
+import io.quarkus.test.junit.QuarkusTest;
+import io.smallrye.mutiny.Uni;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+@QuarkusTest
+class ItemDetailsCacheTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    @Inject
+    ItemDetailsCache itemDetailsCache;
+
+    @Test
+    void testHit() {
+        UUID id = UUID.randomUUID();
+        AtomicInteger loads = new AtomicInteger();
+        Function<Deadline, Uni<GetItemDetailsResponse>> loader = deadline -> Uni.createFrom().item(() -> response(id, loads.incrementAndGet()));
+
+        Assertions.assertNull(itemDetailsCache.getIfPresent(id));
+        Assertions.assertEquals(1, itemDetailsCache.get(id, null, loader).await().atMost(TIMEOUT).getStock());
+        Assertions.assertEquals(1, itemDetailsCache.get(id, null, loader).await().atMost(TIMEOUT).getStock());
+        Assertions.assertEquals(1, itemDetailsCache.getIfPresent(id).getStock());
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testInvalidateOnWrite() {
+        UUID id = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        AtomicInteger loads = new AtomicInteger();
+        Function<Deadline, Uni<GetItemDetailsResponse>> loader = deadline -> Uni.createFrom().item(() -> response(id, loads.incrementAndGet()));
+        itemDetailsCache.get(id, null, loader).await().atMost(TIMEOUT);
+
+        // A write to another item keeps the entry
+        itemDetailsCache.invalidate(other);
+        Assertions.assertEquals(1, itemDetailsCache.get(id, null, loader).await().atMost(TIMEOUT).getStock());
+
+        itemDetailsCache.invalidate(id);
+        Assertions.assertNull(itemDetailsCache.getIfPresent(id));
+        Assertions.assertEquals(2, itemDetailsCache.get(id, null, loader).await().atMost(TIMEOUT).getStock());
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testWriteDuringLoadIsNotCached() {
+        UUID id = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        CompletableFuture<GetItemDetailsResponse> stale = new CompletableFuture<>();
+        CompletableFuture<GetItemDetailsResponse> otherLoad = new CompletableFuture<>();
+        CompletableFuture<GetItemDetailsResponse> pendingStale = itemDetailsCache.get(id, null, deadline -> Uni.createFrom().completionStage(stale))
+                .subscribeAsCompletionStage();
+        CompletableFuture<GetItemDetailsResponse> pendingOther = itemDetailsCache.get(other, null, deadline -> Uni.createFrom().completionStage(otherLoad))
+                .subscribeAsCompletionStage();
+
+        // The write is committed while the responses are loading, only the load of the written item is dropped
+        itemDetailsCache.invalidate(id);
+        stale.complete(response(id, 1));
+        otherLoad.complete(response(other, 1));
+        Assertions.assertEquals(1, pendingStale.join().getStock());
+        Assertions.assertEquals(1, pendingOther.join().getStock());
+
+        Assertions.assertNull(itemDetailsCache.getIfPresent(id));
+        Assertions.assertEquals(1, itemDetailsCache.getIfPresent(other).getStock());
+        Assertions.assertEquals(2, itemDetailsCache.get(id, null, deadline -> Uni.createFrom().item(response(id, 2))).await().atMost(TIMEOUT).getStock());
+    }
+
+    @Test
+    void testConcurrentMissesShareALoad() {
+        UUID id = UUID.randomUUID();
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<GetItemDetailsResponse> load = new CompletableFuture<>();
+        Function<Deadline, Uni<GetItemDetailsResponse>> loader = deadline -> {
+            loads.incrementAndGet();
+            return Uni.createFrom().completionStage(load);
+        };
+
+        List<CompletableFuture<GetItemDetailsResponse>> pending = IntStream.range(0, 16).parallel()
+                .mapToObj(i -> itemDetailsCache.get(id, null, loader).subscribeAsCompletionStage())
+                .toList();
+        Assertions.assertTrue(pending.stream().noneMatch(CompletableFuture::isDone));
+        Assertions.assertNull(itemDetailsCache.getIfPresent(id));
+
+        GetItemDetailsResponse response = response(id, 3);
+        load.complete(response);
+        pending.forEach(future -> Assertions.assertSame(response, future.join()));
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testSharedLoadIsNotBoundedByTheFirstCaller() {
+        UUID id = UUID.randomUUID();
+        List<Deadline> loadDeadlines = new ArrayList<>();
+        CompletableFuture<GetItemDetailsResponse> load = new CompletableFuture<>();
+        Function<Deadline, Uni<GetItemDetailsResponse>> loader = deadline -> {
+            loadDeadlines.add(deadline);
+            return Uni.createFrom().completionStage(load);
+        };
+
+        CompletableFuture<GetItemDetailsResponse> impatient = itemDetailsCache.get(id, Deadline.after(50, TimeUnit.MILLISECONDS), loader)
+                .subscribeAsCompletionStage();
+        CompletableFuture<GetItemDetailsResponse> patient = itemDetailsCache.get(id, Deadline.after(5, TimeUnit.SECONDS), loader)
+                .subscribeAsCompletionStage();
+
+        // The first caller gives up at its own deadline, the load goes on for the others
+        CompletionException e = Assertions.assertThrows(CompletionException.class, impatient::join);
+        Assertions.assertSame(ItemServiceException.Type.DEADLINE_EXCEEDED, ((ItemServiceException) e.getCause()).getType());
+        Assertions.assertFalse(patient.isDone());
+
+        GetItemDetailsResponse response = response(id, 5);
+        load.complete(response);
+        Assertions.assertSame(response, patient.join());
+        Assertions.assertEquals(5, itemDetailsCache.getIfPresent(id).getStock());
+        Assertions.assertEquals(Collections.singletonList(null), loadDeadlines);
+    }
+
+    @Test
+    void testFailedLoadIsNotCached() {
+        UUID id = UUID.randomUUID();
+        Uni<GetItemDetailsResponse> failed = itemDetailsCache.get(id, null, deadline -> Uni.createFrom().failure(new IllegalStateException("boom")));
+        Assertions.assertThrows(IllegalStateException.class, () -> failed.await().atMost(TIMEOUT));
+        Assertions.assertNull(itemDetailsCache.getIfPresent(id));
+        Assertions.assertEquals(4, itemDetailsCache.get(id, null, deadline -> Uni.createFrom().item(response(id, 4))).await().atMost(TIMEOUT).getStock());
+    }
+
+    private static GetItemDetailsResponse response(UUID id, long stock) {
+        return GetItemDetailsResponse.newBuilder()
+                .setId(id.toString())
+                .setStock(stock)
+                .build();
+    }
+}
@@ -0,0 +1,94 @@
+package com.open.su;
+
+import io.quarkus.panache.common.Page;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.sqlclient.PoolOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+class ItemReadRouterTest {
+
+    private Vertx vertx;
+    private PgPool unreachablePool;
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+        // Nothing listens on this port, every query to the "replica" fails
+        unreachablePool = PgPool.pool(vertx, new PgConnectOptions().setHost("localhost").setPort(1).setConnectTimeout(500), new PoolOptions());
+    }
+
+    @AfterEach
+    void tearDown() {
+        unreachablePool.closeAndAwait();
+        vertx.closeAndAwait();
+    }
+
+    @Test
+    void testReadsStayOnThePrimaryWithoutReadDatasource() {
+        ItemReadRouter router = new ItemReadRouter(null, Duration.ofSeconds(1));
+        UUID id = UUID.randomUUID();
+        Assertions.assertFalse(router.routesList());
+        Assertions.assertFalse(router.routes(id));
+        router.recordWrite(id);
+        Assertions.assertEquals(0, router.trackedWrites());
+    }
+
+    @Test
+    void testReadsOfRecentWritesStayOnThePrimary() throws InterruptedException {
+        ItemReadRouter router = new ItemReadRouter(unreachablePool, Duration.ofMillis(200));
+        UUID written = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        Assertions.assertTrue(router.routesList());
+        Assertions.assertTrue(router.routes(written));
+        router.recordWrite(written);
+        Assertions.assertFalse(router.routes(written));
+        Assertions.assertTrue(router.routes(other));
+        Thread.sleep(300);
+        Assertions.assertTrue(router.routes(written));
+    }
+
+    @Test
+    void testExpiredWritesArePruned() throws InterruptedException {
+        ItemReadRouter router = new ItemReadRouter(unreachablePool, Duration.ofMillis(100));
+        router.recordWrites(IntStream.range(0, 1000).mapToObj(i -> UUID.randomUUID()).toList());
+        Assertions.assertEquals(1000, router.trackedWrites());
+        Thread.sleep(200);
+        UUID last = UUID.randomUUID();
+        router.recordWrites(List.of(last));
+        Assertions.assertEquals(1, router.trackedWrites());
+        Assertions.assertFalse(router.routes(last));
+    }
+
+    @Test
+    void testConcurrentPrunesRemoveEveryExpiredWrite() throws InterruptedException {
+        ItemReadRouter router = new ItemReadRouter(unreachablePool, Duration.ofMillis(100));
+        router.recordWrites(IntStream.range(0, 10_000).mapToObj(i -> UUID.randomUUID()).toList());
+        Thread.sleep(200);
+        List<Thread> threads = IntStream.range(0, 8)
+                .mapToObj(i -> new Thread(() -> router.recordWrite(UUID.randomUUID())))
+                .toList();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertEquals(8, router.trackedWrites());
+    }
+
+    @Test
+    void testReplicaErrorFailsTheRead() {
+        ItemReadRouter router = new ItemReadRouter(unreachablePool, Duration.ofSeconds(1));
+        Assertions.assertThrows(Exception.class, () -> router.findById(UUID.randomUUID(), ItemFields.ALL, null).await().atMost(Duration.ofSeconds(10)));
+        Assertions.assertThrows(Exception.class, () -> router.listItems(Page.of(0, 10), null, ItemFields.ALL, null)
+                .await().atMost(Duration.ofSeconds(10)));
+    }
+}
@@ -0,0 +1,113 @@
+package com.open.su;
+
+import com.open.su.exceptions.ItemServiceException;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.quarkus.test.vertx.RunOnVertxContext;
+import io.quarkus.test.vertx.UniAsserter;
+import io.smallrye.mutiny.Uni;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+@QuarkusTest
+@TestProfile(ItemServiceMemoryTest.MemoryStorage.class)
+class ItemServiceMemoryTest {
+
+    @Inject
+    ItemService itemService;
+
+    @RunOnVertxContext
+    @Test
+    void testItemLifecycle(UniAsserter asserter) {
+        UUID id = UUID.randomUUID();
+        asserter.execute(() -> {
+            Item item = new Item();
+            item.id = id;
+            item.maxStock = 10L;
+            item.minStock = 2L;
+            return itemService.createItem(item);
+        });
+
+        // The stock defaults to the maximum stock
+        asserter.assertThat(() -> itemService.getItemDetails(id), item -> Assertions.assertEquals(10L, item.stock));
+
+        asserter.assertFailedWith(() -> {
+            Item item = new Item();
+            item.id = id;
+            item.stock = 1L;
+            return itemService.updateItem(item);
+        }, e -> Assertions.assertEquals("Stock cannot be less than minimum stock", e.getMessage()));
+
+        asserter.assertFailedWith(() -> {
+            Item item = new Item();
+            item.id = id;
+            item.maxStock = 5L;
+            return itemService.updateItem(item);
+        }, e -> Assertions.assertEquals("Maximum stock cannot be less than stock", e.getMessage()));
+
+        asserter.execute(() -> {
+            Item item = new Item();
+            item.id = id;
+            item.stock = 4L;
+            item.maxStock = 5L;
+            return itemService.updateItem(item);
+        });
+
+        asserter.assertFailedWith(() -> itemService.incrementItemStock(id, 2L),
+                e -> Assertions.assertEquals("Stock cannot be greater than maximum stock", e.getMessage()));
+
+        asserter.assertThat(() -> itemService.incrementItemStock(id, -2L), response -> Assertions.assertEquals(2L, response.getItem2()));
+
+        asserter.assertThat(() -> itemService.getItemDetails(id), item -> {
+            Assertions.assertEquals(2L, item.stock);
+            Assertions.assertEquals(2L, item.minStock);
+            Assertions.assertEquals(5L, item.maxStock);
+        });
+
+        asserter.assertFailedWith(() -> itemService.incrementItemStock(id, "north", 1L, null),
+                e -> Assertions.assertSame(ItemServiceException.Type.UNIMPLEMENTED, ((ItemServiceException) e).getType()));
+
+        asserter.execute(() -> itemService.deleteItem(id));
+
+        asserter.assertFailedWith(() -> itemService.getItemDetails(id),
+                e -> Assertions.assertSame(ItemServiceException.Type.NOT_FOUND, ((ItemServiceException) e).getType()));
+    }
+
+    @Test
+    void testWritesWithoutContextAreNotEmittedOnTheFlusher() {
+        Item item = new Item();
+        item.id = UUID.randomUUID();
+        item.maxStock = 100L;
+        item.minStock = 0L;
+        item.stock = 0L;
+        itemService.createItem(item).await().atMost(Duration.ofSeconds(5));
+
+        List<String> threads = Uni.join().all(IntStream.range(0, 20)
+                        .mapToObj(i -> itemService.incrementItemStock(item.id, 1L)
+                                .onItem().transform(response -> Thread.currentThread().getName()))
+                        .toList())
+                .andFailFast()
+                .await().atMost(Duration.ofSeconds(5));
+        Assertions.assertTrue(threads.stream().noneMatch("wal-flusher"::equals), threads::toString);
+        Assertions.assertEquals(20L, itemService.getItemDetails(item.id).await().atMost(Duration.ofSeconds(5)).stock);
+    }
+
+    public static class MemoryStorage implements QuarkusTestProfile {
+
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                    "stock-service.storage", "memory",
+                    "stock-service.memory.directory", "target/item-service-memory-test/" + UUID.randomUUID(),
+                    "stock-service.memory.fsync", "true");
+        }
+    }
+}
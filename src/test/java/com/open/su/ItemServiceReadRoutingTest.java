@@ -0,0 +1,99 @@
+package com.open.su;
+
+import io.quarkus.panache.common.Page;
+import io.quarkus.panache.common.Sort;
+import io.quarkus.reactive.datasource.ReactiveDataSource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.quarkus.test.vertx.RunOnVertxContext;
+import io.quarkus.test.vertx.UniAsserter;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@QuarkusTest
+@TestProfile(ItemServiceReadRoutingTest.ReadDatasource.class)
+class ItemServiceReadRoutingTest {
+
+    @Inject
+    ItemService itemService;
+
+    @Inject
+    @ReactiveDataSource("read")
+    PgPool readPool;
+
+    @RunOnVertxContext
+    @Test
+    void testReadsAreRoutedToTheReadDatasource(UniAsserter asserter) {
+        UUID id = UUID.randomUUID();
+
+        // The read datasource is a separate database rather than a replica, so each read shows which one served it
+        asserter.execute(() -> readPool.query("""
+                        CREATE TABLE IF NOT EXISTS item (
+                            id uuid PRIMARY KEY,
+                            stock bigint NOT NULL,
+                            max_stock bigint NOT NULL,
+                            min_stock bigint NOT NULL,
+                            reserved bigint NOT NULL DEFAULT 0,
+                            created_at timestamp(6),
+                            updated_at timestamp(6)
+                        )""").execute()
+                .chain(() -> readPool.preparedQuery("""
+                                INSERT INTO item (id, stock, max_stock, min_stock, created_at, updated_at)
+                                VALUES ($1, 1, 10, 0, localtimestamp, localtimestamp)""")
+                        .execute(Tuple.of(id))));
+
+        asserter.execute(() -> {
+            Item item = new Item();
+            item.id = id;
+            item.maxStock = 10L;
+            item.minStock = 0L;
+            item.stock = 5L;
+            return itemService.createItem(item);
+        });
+
+        // The item was just written through this instance, its reads stay on the primary
+        asserter.assertThat(() -> itemService.getItemDetails(id), item -> Assertions.assertEquals(5L, item.stock));
+
+        // Lists are always read from the read datasource
+        asserter.assertThat(() -> itemService.listItems(Page.of(0, 10), Sort.by("id"), null),
+                items -> Assertions.assertEquals(List.of(1L), items.stream().map(item -> item.stock).toList()));
+
+        // Once the replica lag has passed, reads go to the read datasource whether it caught up or not
+        asserter.execute(() -> sleep(Duration.ofMillis(1000)));
+
+        asserter.assertThat(() -> itemService.getItemDetails(id), item -> Assertions.assertEquals(1L, item.stock));
+
+        asserter.execute(() -> itemService.incrementItemStock(id, 1L));
+
+        asserter.assertThat(() -> itemService.getItemDetails(id), item -> Assertions.assertEquals(6L, item.stock));
+    }
+
+    private static Uni<Void> sleep(Duration duration) {
+        Context context = Vertx.currentContext();
+        return Uni.createFrom().emitter(emitter -> context.owner().setTimer(duration.toMillis(), id -> emitter.complete(null)));
+    }
+
+    public static class ReadDatasource implements QuarkusTestProfile {
+
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            // Dev services start a second database for the named datasource
+            return Map.of(
+                    "quarkus.datasource.\"read\".db-kind", "postgresql",
+                    "stock-service.read-routing.enabled", "true",
+                    "stock-service.read-routing.max-replica-lag", "500ms");
+        }
+    }
+}
@@ -1,24 +1,48 @@
 package com.open.su;
 
 import com.open.su.exceptions.ItemServiceException;
+import io.grpc.Deadline;
 import io.quarkus.hibernate.reactive.panache.Panache;
 import io.quarkus.panache.common.Page;
 import io.quarkus.panache.common.Sort;
 import io.quarkus.test.hibernate.reactive.panache.TransactionalUniAsserter;
 import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.vertx.RunOnVertxContext;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.tuples.Tuple2;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
 import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @QuarkusTest
 class ItemServiceTest {
     @Inject
     ItemService itemService;
 
+    @Inject
+    StockLedger stockLedger;
+
+    @Inject
+    StockReservations reservations;
+
+    @ConfigProperty(name = "stock-service.delete-chunk-size")
+    int deleteChunkSize;
+
     @RunOnVertxContext
     @Test
     void testListItems(TransactionalUniAsserter asserter) {
@@ -88,6 +112,20 @@ class ItemServiceTest {
         asserter.assertFailedWith(() -> itemService.getItemDetails(UUID.randomUUID())
                 , e -> Assertions.assertSame(ItemServiceException.Type.NOT_FOUND, ((ItemServiceException) e).getType()));
 
+        // Concurrent calls with the same deadline share a single lookup
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+            Deadline deadline = Deadline.after(1, TimeUnit.MINUTES);
+
+            return Uni.join().all(itemService.getItemDetails(item.id, deadline), itemService.getItemDetails(item.id, deadline)).andFailFast();
+        }, responses -> {
+            Item item = (Item) asserter.getData("item");
+            Assertions.assertEquals(List.of(item, item), responses);
+        });
+
+        asserter.assertFailedWith(() -> itemService.getItemDetails(((Item) asserter.getData("item")).id, Deadline.after(0, TimeUnit.NANOSECONDS)),
+                e -> Assertions.assertSame(ItemServiceException.Type.DEADLINE_EXCEEDED, ((ItemServiceException) e).getType()));
+
         asserter.execute(() -> Item.deleteAll());
 
         asserter.surroundWith(u -> Panache.withSession(() -> u));
@@ -162,6 +200,15 @@ class ItemServiceTest {
             return itemService.createItem(item);
         }, e -> Assertions.assertSame(ItemServiceException.Type.CONFLICT, ((ItemServiceException) e).getType()));
 
+        asserter.assertThat(() -> {
+            Item item = new Item();
+            item.id = UUID.randomUUID();
+            item.maxStock = 10L;
+            item.minStock = 5L;
+
+            return itemService.createItem(item).chain(id -> Item.<Item>findById(id));
+        }, item -> Assertions.assertEquals(10L, item.stock));
+
         asserter.execute(() -> Item.deleteAll());
 
         asserter.surroundWith(u -> Panache.withSession(() -> u));
@@ -241,6 +288,51 @@ class ItemServiceTest {
             return itemService.updateItem(item);
         }, e -> Assertions.assertSame(ItemServiceException.Type.NOT_FOUND, ((ItemServiceException) e).getType()));
 
+        // item1 has a stock of 7 and bounds of 5 and 10
+        asserter.assertFailedWith(() -> {
+            Item item = new Item();
+            item.id = ((Item) asserter.getData("item1")).id;
+            item.maxStock = 6L;
+
+            return itemService.updateItem(item);
+        }, e -> {
+            Assertions.assertSame(ItemServiceException.Type.INVALID_ARGUMENT, ((ItemServiceException) e).getType());
+            Assertions.assertEquals("Maximum stock cannot be less than stock", e.getMessage());
+        });
+
+        asserter.assertFailedWith(() -> {
+            Item item = new Item();
+            item.id = ((Item) asserter.getData("item1")).id;
+            item.minStock = 8L;
+
+            return itemService.updateItem(item);
+        }, e -> {
+            Assertions.assertSame(ItemServiceException.Type.INVALID_ARGUMENT, ((ItemServiceException) e).getType());
+            Assertions.assertEquals("Minimum stock cannot be greater than stock", e.getMessage());
+        });
+
+        asserter.assertFailedWith(() -> {
+            Item item = new Item();
+            item.id = ((Item) asserter.getData("item1")).id;
+            item.stock = 11L;
+
+            return itemService.updateItem(item);
+        }, e -> Assertions.assertSame(ItemServiceException.Type.INVALID_ARGUMENT, ((ItemServiceException) e).getType()));
+
+        asserter.assertThat(() -> {
+            Item item = new Item();
+            item.id = ((Item) asserter.getData("item1")).id;
+            item.stock = 3L;
+            item.minStock = 2L;
+            item.maxStock = 4L;
+
+            // The item is managed by the session, read the row rather than the entity
+            return itemService.updateItem(item).chain(id -> Panache.getSession()
+                    .chain(session -> session.createNativeQuery("SELECT stock, min_stock, max_stock FROM item WHERE id = ?1", Object[].class)
+                            .setParameter(1, id)
+                            .getSingleResult()));
+        }, row -> Assertions.assertEquals(List.of(3L, 2L, 4L), Arrays.stream(row).map(value -> ((Number) value).longValue()).toList()));
+
         asserter.execute(() -> Item.deleteAll());
 
         asserter.surroundWith(u -> Panache.withSession(() -> u));
@@ -327,4 +419,495 @@ class ItemServiceTest {
 
         asserter.surroundWith(u -> Panache.withSession(() -> u));
     }
+
+    @RunOnVertxContext
+    @Test
+    void testExpiredDeadline(TransactionalUniAsserter asserter) {
+        asserter.execute(() -> {
+            Item item = new Item();
+            item.id = UUID.randomUUID();
+            item.maxStock = 10L;
+            item.minStock = 5L;
+            item.stock = 7L;
+
+            asserter.putData("item", item);
+
+            return item.persist();
+        });
+
+        asserter.assertFailedWith(() -> {
+            Item item = (Item) asserter.getData("item");
+
+            return itemService.incrementItemStock(item.id, 1L, Deadline.after(0, TimeUnit.NANOSECONDS));
+        }, e -> Assertions.assertSame(ItemServiceException.Type.DEADLINE_EXCEEDED, ((ItemServiceException) e).getType()));
+
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+
+            return Item.findById(item.id);
+        }, response -> Assertions.assertEquals(7L, ((Item) response).stock));
+
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+
+            return itemService.incrementItemStock(item.id, 1L, Deadline.after(1, TimeUnit.MINUTES));
+        }, response -> Assertions.assertEquals(8L, response.getItem2()));
+
+        asserter.assertFailedWith(() -> itemService.inTransaction(Deadline.after(200, TimeUnit.MILLISECONDS), ItemService.Method.DETAILS,
+                        () -> Panache.getSession().chain(session -> session.createNativeQuery("SELECT 1 FROM pg_sleep(5)", Integer.class).getSingleResult())),
+                e -> Assertions.assertSame(ItemServiceException.Type.DEADLINE_EXCEEDED, ((ItemServiceException) e).getType()));
+
+        asserter.execute(() -> Item.deleteAll());
+
+        asserter.surroundWith(u -> Panache.withSession(() -> u));
+    }
+
+    @RunOnVertxContext
+    @Test
+    void testStockLedger(TransactionalUniAsserter asserter) {
+        asserter.execute(() -> {
+            Item item = new Item();
+            item.id = UUID.randomUUID();
+            item.maxStock = 10L;
+            item.minStock = 0L;
+            item.stock = 10L;
+
+            asserter.putData("item", item);
+            asserter.putData("start", Instant.now());
+
+            return itemService.createItem(item);
+        });
+
+        asserter.execute(() -> itemService.incrementItemStock(((Item) asserter.getData("item")).id, -3L));
+
+        asserter.execute(() -> {
+            asserter.putData("beforeLastIncrement", Instant.now());
+
+            return itemService.incrementItemStock(((Item) asserter.getData("item")).id, 1L);
+        });
+
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+
+            return stockLedger.movements(item.id, (Instant) asserter.getData("start"), Instant.now().plusSeconds(1));
+        }, movements -> {
+            Assertions.assertEquals(3, movements.size());
+            Assertions.assertSame(StockMovement.Kind.CREATE, movements.get(0).kind());
+            Assertions.assertEquals(10L, movements.get(0).stock());
+            Assertions.assertEquals(-3L, movements.get(1).delta());
+            Assertions.assertEquals(7L, movements.get(1).stock());
+            Assertions.assertEquals(8L, movements.get(2).stock());
+        });
+
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+
+            return stockLedger.stockAsOf(item.id, (Instant) asserter.getData("beforeLastIncrement"));
+        }, stock -> Assertions.assertEquals(7L, stock));
+
+        // Each snapshot takes the movements committed since the previous one
+        asserter.execute(() -> stockLedger.snapshot());
+
+        asserter.assertThat(() -> snapshottedStocks(((Item) asserter.getData("item")).id), stocks -> Assertions.assertEquals(List.of(8L), stocks));
+
+        asserter.execute(() -> itemService.incrementItemStock(((Item) asserter.getData("item")).id, 1L));
+
+        asserter.execute(() -> stockLedger.snapshot().chain(() -> stockLedger.snapshot()));
+
+        asserter.assertThat(() -> snapshottedStocks(((Item) asserter.getData("item")).id), stocks -> Assertions.assertEquals(List.of(9L, 8L), stocks));
+
+        asserter.execute(() -> Item.deleteAll());
+
+        asserter.surroundWith(u -> Panache.withSession(() -> u));
+    }
+
+    @RunOnVertxContext
+    @Test
+    void testDeleteItems(TransactionalUniAsserter asserter) {
+        asserter.execute(() -> {
+            Item item1 = new Item();
+            item1.id = UUID.randomUUID();
+            item1.maxStock = 10L;
+            item1.minStock = 5L;
+            item1.stock = 7L;
+            Item item2 = new Item();
+            item2.id = UUID.randomUUID();
+            item2.maxStock = 10L;
+            item2.minStock = 5L;
+            item2.stock = 8L;
+
+            asserter.putData("item1", item1);
+            asserter.putData("item2", item2);
+            asserter.putData("missing", UUID.randomUUID());
+
+            return item1.persist().chain(item2::persist);
+        });
+
+        asserter.assertThat(() -> {
+            Item item1 = (Item) asserter.getData("item1");
+            Item item2 = (Item) asserter.getData("item2");
+            UUID missing = (UUID) asserter.getData("missing");
+
+            return itemService.deleteItems(Multi.createFrom().items(item1.id, missing, item2.id), null);
+        }, response -> {
+            Assertions.assertEquals(2L, response.getItem1());
+            Assertions.assertEquals(List.of((UUID) asserter.getData("missing")), response.getItem2());
+        });
+
+        asserter.assertThat(() -> Item.count(), count -> Assertions.assertEquals(0L, count));
+
+        // Ids repeated across chunks are deleted and reported missing once
+        asserter.execute(() -> {
+            Item item = new Item();
+            item.id = UUID.randomUUID();
+            item.maxStock = 10L;
+            item.minStock = 0L;
+            item.stock = 1L;
+            asserter.putData("item3", item);
+            return itemService.createItem(item);
+        });
+
+        asserter.assertThat(() -> {
+            UUID id = ((Item) asserter.getData("item3")).id;
+            UUID missing = (UUID) asserter.getData("missing");
+            List<UUID> ids = new ArrayList<>();
+            ids.add(missing);
+            ids.addAll(Collections.nCopies(deleteChunkSize - 1, id));
+            ids.add(id);
+            ids.add(missing);
+
+            return itemService.deleteItems(Multi.createFrom().iterable(ids), null);
+        }, response -> {
+            Assertions.assertEquals(1L, response.getItem1());
+            Assertions.assertEquals(List.of((UUID) asserter.getData("missing")), response.getItem2());
+        });
+
+        asserter.assertThat(() -> Item.count(), count -> Assertions.assertEquals(0L, count));
+
+        asserter.execute(() -> Item.deleteAll());
+
+        asserter.surroundWith(u -> Panache.withSession(() -> u));
+    }
+
+    @RunOnVertxContext
+    @Test
+    void testItemLocationStock(TransactionalUniAsserter asserter) {
+        asserter.execute(() -> {
+            Item item = new Item();
+            item.id = UUID.randomUUID();
+            item.maxStock = 10L;
+            item.minStock = 0L;
+            item.stock = 5L;
+            asserter.putData("item", item);
+            asserter.putData("start", Instant.now());
+            return item.persist();
+        });
+
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.incrementItemStock(item.id, "north", 7L, null);
+        }, response -> Assertions.assertEquals(7L, response.getItem2()));
+
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.incrementItemStock(item.id, "south", 3L, null)
+                    .chain(() -> itemService.incrementItemStock(item.id, "north", -2L, null));
+        }, response -> Assertions.assertEquals(5L, response.getItem2()));
+
+        asserter.assertFailedWith(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.incrementItemStock(item.id, "south", 8L, null);
+        }, e -> {
+            Assertions.assertSame(ItemServiceException.Type.INVALID_ARGUMENT, ((ItemServiceException) e).getType());
+            Assertions.assertEquals("Stock cannot be greater than maximum stock", e.getMessage());
+        });
+
+        // A new location starts with no stock
+        asserter.assertFailedWith(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.incrementItemStock(item.id, "west", -1L, null);
+        }, e -> Assertions.assertEquals("Stock cannot be less than minimum stock", e.getMessage()));
+
+        asserter.assertFailedWith(() -> itemService.incrementItemStock(UUID.randomUUID(), "north", 1L, null),
+                e -> Assertions.assertSame(ItemServiceException.Type.NOT_FOUND, ((ItemServiceException) e).getType()));
+
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.getItemStock(item.id, null, null);
+        }, stock -> {
+            // The stock of the item itself is not part of the total of its locations
+            Assertions.assertEquals(8L, stock.stock());
+            Assertions.assertEquals(Map.of("north", 5L, "south", 3L), stock.locations());
+        });
+
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+            return stockLedger.movements(item.id, (Instant) asserter.getData("start"), Instant.now().plusSeconds(1));
+        }, movements -> {
+            Assertions.assertEquals(List.of("north", "south", "north"), movements.stream().map(StockMovement::location).toList());
+            Assertions.assertEquals(List.of(7L, 3L, -2L), movements.stream().map(StockMovement::delta).toList());
+            Assertions.assertEquals(List.of(7L, 3L, 5L), movements.stream().map(StockMovement::stock).toList());
+            Assertions.assertTrue(movements.stream().allMatch(movement -> movement.kind() == StockMovement.Kind.INCREMENT));
+        });
+
+        // The location movements are not part of the stock of the item itself
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+            return stockLedger.stockAsOf(item.id, Instant.now());
+        }, Assertions::assertNull);
+
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.getItemStock(item.id, "east", null);
+        }, stock -> Assertions.assertEquals(0L, stock.stock()));
+
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.deleteItem(item.id)
+                    .chain(() -> Panache.getSession())
+                    .chain(session -> session.createNativeQuery("SELECT count(*) FROM item_location_stock WHERE item_id = ?1", Long.class)
+                            .setParameter(1, item.id)
+                            .getSingleResult());
+        }, count -> Assertions.assertEquals(0L, count));
+
+        asserter.surroundWith(u -> Panache.withSession(() -> u));
+    }
+
+    @RunOnVertxContext
+    @Test
+    void testReservations(TransactionalUniAsserter asserter) {
+        asserter.execute(() -> {
+            Item item = new Item();
+            item.id = UUID.randomUUID();
+            item.maxStock = 10L;
+            item.minStock = 1L;
+            item.stock = 6L;
+            asserter.putData("item", item);
+            return item.persist();
+        });
+
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.reserveItemStock(item.id, 3L, null, null)
+                    .invoke(reservation -> asserter.putData("reservation", reservation));
+        }, reservation -> {
+            Assertions.assertEquals(3L, reservation.stock());
+            Assertions.assertTrue(reservation.expiresAt().after(new Date()));
+        });
+
+        asserter.assertFailedWith(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.reserveItemStock(item.id, 3L, null, null);
+        }, e -> {
+            Assertions.assertSame(ItemServiceException.Type.INVALID_ARGUMENT, ((ItemServiceException) e).getType());
+            Assertions.assertEquals("Stock cannot be less than minimum stock", e.getMessage());
+        });
+
+        asserter.assertFailedWith(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.reserveItemStock(item.id, 0L, null, null);
+        }, e -> Assertions.assertSame(ItemServiceException.Type.INVALID_ARGUMENT, ((ItemServiceException) e).getType()));
+
+        asserter.assertThat(() -> {
+            Reservation reservation = (Reservation) asserter.getData("reservation");
+            return itemService.commitReservation(reservation.id(), null);
+        }, id -> Assertions.assertEquals(((Item) asserter.getData("item")).id, id));
+
+        asserter.assertFailedWith(() -> {
+            Reservation reservation = (Reservation) asserter.getData("reservation");
+            return itemService.releaseReservation(reservation.id(), null);
+        }, e -> Assertions.assertSame(ItemServiceException.Type.NOT_FOUND, ((ItemServiceException) e).getType()));
+
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.reserveItemStock(item.id, 2L, Duration.ofMinutes(1), null)
+                    .chain(reservation -> itemService.releaseReservation(reservation.id(), null));
+        }, result -> Assertions.assertEquals(3L, result.getItem2()));
+
+        asserter.assertFailedWith(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.reserveItemStock(item.id, 1L, null, null)
+                    .call(() -> itemService.deleteItem(item.id))
+                    .chain(reservation -> itemService.commitReservation(reservation.id(), null));
+        }, e -> Assertions.assertSame(ItemServiceException.Type.NOT_FOUND, ((ItemServiceException) e).getType()));
+
+        asserter.surroundWith(u -> Panache.withSession(() -> u));
+    }
+
+    @RunOnVertxContext
+    @Test
+    void testReservationsAreHeldAgainstTheStock(TransactionalUniAsserter asserter) {
+        asserter.execute(() -> {
+            Item item = new Item();
+            item.id = UUID.randomUUID();
+            item.maxStock = 10L;
+            item.minStock = 0L;
+            item.stock = 6L;
+            asserter.putData("item", item);
+            asserter.putData("start", Instant.now());
+            return item.persist();
+        });
+
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.reserveItemStock(item.id, 3L, null, null)
+                    .invoke(reservation -> asserter.putData("reservation", reservation));
+        }, reservation -> Assertions.assertEquals(3L, reservation.stock()));
+
+        // The reserved quantity is held above the minimum stock
+        asserter.assertFailedWith(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.incrementItemStock(item.id, -4L);
+        }, e -> Assertions.assertEquals("Stock cannot be less than minimum stock", e.getMessage()));
+
+        asserter.assertFailedWith(() -> {
+            Item item = new Item();
+            item.id = ((Item) asserter.getData("item")).id;
+            item.stock = 2L;
+            return itemService.updateItem(item);
+        }, e -> Assertions.assertSame(ItemServiceException.Type.INVALID_ARGUMENT, ((ItemServiceException) e).getType()));
+
+        // The stock can still be raised to its maximum
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.incrementItemStock(item.id, 4L);
+        }, response -> Assertions.assertEquals(10L, response.getItem2()));
+
+        // Nothing is given back on release, so nothing is lost to the maximum stock
+        asserter.assertThat(() -> {
+            Reservation reservation = (Reservation) asserter.getData("reservation");
+            return itemService.releaseReservation(reservation.id(), null);
+        }, result -> Assertions.assertEquals(10L, result.getItem2()));
+
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.reserveItemStock(item.id, 4L, null, null)
+                    .chain(reservation -> itemService.commitReservation(reservation.id(), null))
+                    .chain(() -> stockAndReserved(item.id));
+        }, stocks -> {
+            Assertions.assertEquals(6L, stocks.getItem1());
+            Assertions.assertEquals(0L, stocks.getItem2());
+        });
+
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+            return stockLedger.movements(item.id, (Instant) asserter.getData("start"), Instant.now().plusSeconds(1));
+        }, movements -> {
+            // Only the increment and the commit changed the stock
+            Assertions.assertEquals(2, movements.size());
+            StockMovement commit = movements.get(1);
+            Assertions.assertSame(StockMovement.Kind.COMMIT, commit.kind());
+            Assertions.assertEquals(-4L, commit.delta());
+            Assertions.assertEquals(6L, commit.stock());
+        });
+
+        asserter.surroundWith(u -> Panache.withSession(() -> u));
+    }
+
+    @RunOnVertxContext
+    @Test
+    void testExpiredReservationsAreReleased(TransactionalUniAsserter asserter) {
+        asserter.execute(() -> {
+            Item item = new Item();
+            item.id = UUID.randomUUID();
+            item.maxStock = 10L;
+            item.minStock = 0L;
+            item.stock = 6L;
+            asserter.putData("item", item);
+            return item.persist();
+        });
+
+        asserter.execute(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.reserveItemStock(item.id, 3L, Duration.ofMillis(10), null);
+        });
+
+        // Let the expiry pass the next tick of the timing wheel
+        asserter.execute(() -> sleep(Duration.ofMillis(2500)).chain(() -> itemService.releaseExpiredReservations()));
+
+        asserter.assertThat(() -> stockAndReserved(((Item) asserter.getData("item")).id), stocks -> {
+            Assertions.assertEquals(6L, stocks.getItem1());
+            Assertions.assertEquals(0L, stocks.getItem2());
+        });
+
+        // A reservation not tracked by any instance, as if the instance that made it went away
+        asserter.execute(() -> {
+            Item item = (Item) asserter.getData("item");
+            return reservations.reserve(UUID.randomUUID(), item.id, 2L, new Date(System.currentTimeMillis() - 1000));
+        });
+
+        asserter.execute(() -> itemService.sweepExpiredReservations());
+
+        asserter.assertThat(() -> stockAndReserved(((Item) asserter.getData("item")).id), stocks -> {
+            Assertions.assertEquals(6L, stocks.getItem1());
+            Assertions.assertEquals(0L, stocks.getItem2());
+        });
+
+        asserter.surroundWith(u -> Panache.withSession(() -> u));
+    }
+
+    @RunOnVertxContext
+    @Test
+    void testPartialItems(TransactionalUniAsserter asserter) {
+        asserter.execute(() -> {
+            Item item = new Item();
+            item.id = UUID.randomUUID();
+            item.maxStock = 10L;
+            item.minStock = 5L;
+            item.stock = 7L;
+            asserter.putData("item", item);
+            return item.persist();
+        });
+
+        asserter.assertThat(() -> itemService.listItems(Page.of(0, 10), Sort.by("stock"), ItemFields.of(List.of("stock")), null), items -> {
+            Assertions.assertEquals(1, items.size());
+            Item item = items.get(0);
+            Assertions.assertEquals(((Item) asserter.getData("item")).id, item.id);
+            Assertions.assertEquals(7L, item.stock);
+            Assertions.assertNull(item.maxStock);
+            Assertions.assertNull(item.createdAt);
+        });
+
+        asserter.assertThat(() -> {
+            Item item = (Item) asserter.getData("item");
+            return itemService.getItemDetails(item.id, ItemFields.of(List.of("min_stock", "updated_at")), null);
+        }, item -> {
+            Assertions.assertEquals(5L, item.minStock);
+            Assertions.assertNotNull(item.updatedAt);
+            Assertions.assertNull(item.stock);
+            PartialItem partialItem = ItemFields.of(List.of("min_stock", "updated_at")).toPartialItem(item);
+            Assertions.assertTrue(partialItem.hasMinStock());
+            Assertions.assertTrue(partialItem.hasUpdatedAt());
+            Assertions.assertFalse(partialItem.hasStock());
+        });
+
+        asserter.assertFailedWith(() -> itemService.getItemDetails(UUID.randomUUID(), ItemFields.of(List.of("stock")), null),
+                e -> Assertions.assertSame(ItemServiceException.Type.NOT_FOUND, ((ItemServiceException) e).getType()));
+
+        asserter.execute(() -> Assertions.assertThrows(ItemServiceException.class, () -> ItemFields.of(List.of("name"))));
+
+        asserter.execute(() -> Item.deleteAll());
+
+        asserter.surroundWith(u -> Panache.withSession(() -> u));
+    }
+
+    private static Uni<List<Long>> snapshottedStocks(UUID id) {
+        return Panache.getSession()
+                .chain(session -> session.createNativeQuery("SELECT stock FROM stock_snapshot WHERE item_id = ?1 ORDER BY taken_at DESC", Long.class)
+                        .setParameter(1, id)
+                        .getResultList());
+    }
+
+    private static Uni<Tuple2<Long, Long>> stockAndReserved(UUID id) {
+        return Panache.getSession()
+                .chain(session -> session.createNativeQuery("SELECT stock, reserved FROM item WHERE id = ?1", Object[].class)
+                        .setParameter(1, id)
+                        .getSingleResult())
+                .map(row -> Tuple2.of(((Number) row[0]).longValue(), ((Number) row[1]).longValue()));
+    }
+
+    private static Uni<Void> sleep(Duration duration) {
+        Context context = Vertx.currentContext();
+        return Uni.createFrom().emitter(emitter -> context.owner().setTimer(duration.toMillis(), id -> emitter.complete(null)));
+    }
 }
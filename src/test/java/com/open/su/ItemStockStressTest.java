@@ -0,0 +1,291 @@
+package com.open.su;
+
+import com.open.su.controllers.models.proto.IncrementStock;
+import com.open.su.controllers.models.proto.IncrementStockError;
+import com.open.su.controllers.models.proto.IncrementStockSuccess;
+import com.rabbitmq.client.AMQP;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.quarkus.grpc.GrpcClient;
+import io.quarkus.test.junit.QuarkusTest;
+import io.smallrye.mutiny.Multi;
+import io.vertx.core.json.JsonObject;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.core.buffer.Buffer;
+import io.vertx.mutiny.rabbitmq.RabbitMQClient;
+import io.vertx.mutiny.rabbitmq.RabbitMQMessage;
+import io.vertx.rabbitmq.QueueOptions;
+import io.vertx.rabbitmq.RabbitMQOptions;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Fires concurrent increments and decrements from gRPC and MQ at a few items with narrow bounds, then checks that no
+ * update was lost and that the stock never left its bounds.
+ * <p>
+ * Run with {@code ./mvnw test -Pstress}.
+ */
+@QuarkusTest
+@Tag("stress")
+class ItemStockStressTest {
+
+    private static final Logger LOGGER = Logger.getLogger(ItemStockStressTest.class);
+
+    private static final int GRPC_INCREMENTS = 3000;
+    private static final int GRPC_CONCURRENCY = 64;
+    private static final int MQ_INCREMENTS_PER_ITEM = 300;
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+
+    @GrpcClient("item")
+    ItemGrpc client;
+
+    @Inject
+    StockLedger stockLedger;
+
+    @Inject
+    Vertx vertx;
+
+    @ConfigProperty(name = "rabbitmq-host", defaultValue = "localhost")
+    String rabbitmqHost;
+
+    @ConfigProperty(name = "rabbitmq-port", defaultValue = "5672")
+    int rabbitmqPort;
+
+    @ConfigProperty(name = "rabbitmq-username", defaultValue = "guest")
+    String rabbitmqUsername;
+
+    @ConfigProperty(name = "rabbitmq-password", defaultValue = "guest")
+    String rabbitmqPassword;
+
+    RabbitMQClient rabbitmq;
+
+    @BeforeEach
+    void connect() {
+        rabbitmq = RabbitMQClient.create(vertx, new RabbitMQOptions()
+                .setHost(rabbitmqHost)
+                .setPort(rabbitmqPort)
+                .setUser(rabbitmqUsername)
+                .setPassword(rabbitmqPassword));
+        rabbitmq.start().await().atMost(TIMEOUT);
+    }
+
+    @AfterEach
+    void disconnect() {
+        rabbitmq.stop().await().atMost(TIMEOUT);
+    }
+
+    @Test
+    void testConcurrentIncrements() {
+        // Narrow bounds, so that many increments hit them; items are created full
+        List<StressedItem> items = List.of(
+                createItem(0, 100, -1),
+                createItem(10, 30, 1),
+                createItem(40, 50, -2));
+        Instant start = Instant.now();
+
+        // Results of the MQ increments, by item
+        Map<UUID, AtomicLong> mqSuccesses = new ConcurrentHashMap<>();
+        Map<UUID, AtomicLong> mqErrors = new ConcurrentHashMap<>();
+        Map<UUID, Queue<Long>> mqStocks = new ConcurrentHashMap<>();
+        AtomicLong mqUnexpectedErrors = new AtomicLong();
+        items.forEach(item -> {
+            mqSuccesses.put(item.id(), new AtomicLong());
+            mqErrors.put(item.id(), new AtomicLong());
+            mqStocks.put(item.id(), new ConcurrentLinkedQueue<>());
+        });
+        consume("increment-stock-out", message -> {
+            UUID id;
+            long stock;
+            if ("application/x-protobuf".equals(message.properties().getContentType())) {
+                IncrementStockSuccess success = parseSuccess(message.body().getBytes());
+                id = new UUID(success.getItemIdMsb(), success.getItemIdLsb());
+                stock = success.getStock();
+            } else {
+                JsonObject success = message.body().toJsonObject();
+                id = UUID.fromString(success.getString("itemId"));
+                stock = success.getLong("stock");
+            }
+            mqStocks.get(id).add(stock);
+            mqSuccesses.get(id).incrementAndGet();
+        });
+        consume("increment-stock-error", message -> {
+            UUID id;
+            if ("application/x-protobuf".equals(message.properties().getContentType())) {
+                IncrementStockError error = parseError(message.body().getBytes());
+                if (error.getType() == IncrementStockError.Type.UNEXPECTED_ERROR) {
+                    mqUnexpectedErrors.incrementAndGet();
+                }
+                id = new UUID(error.getItemIdMsb(), error.getItemIdLsb());
+            } else {
+                JsonObject error = message.body().toJsonObject();
+                if ("UNEXPECTED_ERROR".equals(error.getString("type"))) {
+                    mqUnexpectedErrors.incrementAndGet();
+                }
+                id = UUID.fromString(error.getString("itemId"));
+            }
+            mqErrors.get(id).incrementAndGet();
+        });
+
+        // MQ increments use a fixed delta per item, so the accepted sum is the number of successes times the delta
+        Random random = new Random(42);
+        List<Buffer> mqMessages = new ArrayList<>();
+        List<String> mqContentTypes = new ArrayList<>();
+        for (int i = 0; i < MQ_INCREMENTS_PER_ITEM; i++) {
+            for (StressedItem item : items) {
+                boolean protobuf = random.nextBoolean();
+                mqContentTypes.add(protobuf ? "application/x-protobuf" : "application/json");
+                mqMessages.add(protobuf
+                        ? Buffer.buffer(IncrementStock.newBuilder()
+                        .setItemIdMsb(item.id().getMostSignificantBits())
+                        .setItemIdLsb(item.id().getLeastSignificantBits())
+                        .setQuantity(item.mqDelta())
+                        .build().toByteArray())
+                        : Buffer.newInstance(new JsonObject().put("itemId", item.id().toString()).put("quantity", item.mqDelta()).toBuffer()));
+            }
+        }
+
+        // gRPC increments use random deltas, with bursts of the same sign to push the items against their bounds
+        List<GrpcIncrement> grpcIncrements = new ArrayList<>();
+        for (int i = 0; i < GRPC_INCREMENTS; i++) {
+            StressedItem item = items.get(random.nextInt(items.size()));
+            long delta = (i / 200) % 2 == 0 ? 1 + random.nextInt(3) : -1 - random.nextInt(3);
+            grpcIncrements.add(new GrpcIncrement(item.id(), delta));
+        }
+
+        long startNanos = System.nanoTime();
+        Multi.createFrom().range(0, mqMessages.size())
+                .onItem().transformToUniAndMerge(i -> rabbitmq.basicPublish("increment-stock-in", "stress",
+                        new AMQP.BasicProperties.Builder().contentType(mqContentTypes.get(i)).build(),
+                        mqMessages.get(i)))
+                .collect().last()
+                .subscribe().with(v -> LOGGER.info("Published " + mqMessages.size() + " MQ increments"));
+        List<GrpcResult> grpcResults = Multi.createFrom().iterable(grpcIncrements)
+                .onItem().transformToUni(increment -> client.incrementItemStock(IncrementItemStockRequest.newBuilder()
+                                .setId(increment.id().toString())
+                                .setQuantity(increment.delta())
+                                .build())
+                        .onItem().transform(response -> new GrpcResult(increment, response.getStock(), true))
+                        .onFailure(StatusRuntimeException.class).recoverWithItem(t -> {
+                            Assertions.assertEquals(Status.Code.INVALID_ARGUMENT, ((StatusRuntimeException) t).getStatus().getCode(), t.getMessage());
+                            return new GrpcResult(increment, 0, false);
+                        }))
+                .merge(GRPC_CONCURRENCY)
+                .collect().asList()
+                .await().atMost(TIMEOUT);
+        long grpcNanos = System.nanoTime() - startNanos;
+
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (mqSuccesses.values().stream().mapToLong(AtomicLong::get).sum() + mqErrors.values().stream().mapToLong(AtomicLong::get).sum() < mqMessages.size()) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "Timed out waiting for the MQ results");
+            sleep();
+        }
+        long totalNanos = System.nanoTime() - startNanos;
+        Assertions.assertEquals(0, mqUnexpectedErrors.get(), "Unexpected errors on the MQ increments");
+
+        for (StressedItem item : items) {
+            long grpcAccepted = grpcResults.stream()
+                    .filter(result -> result.increment().id().equals(item.id()) && result.accepted())
+                    .mapToLong(result -> result.increment().delta())
+                    .sum();
+            long mqAccepted = mqSuccesses.get(item.id()).get() * item.mqDelta();
+            long finalStock = client.getItemDetails(GetItemDetailsRequest.newBuilder().setId(item.id().toString()).build())
+                    .await().atMost(TIMEOUT).getStock();
+
+            Assertions.assertEquals(item.initialStock() + grpcAccepted + mqAccepted, finalStock, "Lost update on item " + item.id());
+            Assertions.assertTrue(finalStock >= item.minStock() && finalStock <= item.maxStock(), "Stock out of bounds on item " + item.id());
+            Assertions.assertEquals(MQ_INCREMENTS_PER_ITEM, mqSuccesses.get(item.id()).get() + mqErrors.get(item.id()).get());
+            grpcResults.stream()
+                    .filter(result -> result.increment().id().equals(item.id()) && result.accepted())
+                    .forEach(result -> Assertions.assertTrue(result.stock() >= item.minStock() && result.stock() <= item.maxStock()));
+            mqStocks.get(item.id()).forEach(stock -> Assertions.assertTrue(stock >= item.minStock() && stock <= item.maxStock(),
+                    "MQ stock " + stock + " out of bounds on item " + item.id()));
+
+            long ledgerDelta = stockLedger.movements(item.id(), start, Instant.now().plusSeconds(1))
+                    .await().atMost(TIMEOUT).stream()
+                    .filter(movement -> movement.kind() == StockMovement.Kind.INCREMENT)
+                    .mapToLong(StockMovement::delta)
+                    .sum();
+            Assertions.assertEquals(finalStock - item.initialStock(), ledgerDelta, "Ledger out of sync on item " + item.id());
+        }
+
+        LOGGER.infof("gRPC: %d increments in %d ms (%.0f/s), %d accepted",
+                GRPC_INCREMENTS, grpcNanos / 1_000_000, GRPC_INCREMENTS / (grpcNanos / 1e9),
+                grpcResults.stream().filter(GrpcResult::accepted).count());
+        LOGGER.infof("Total: %d increments in %d ms (%.0f/s)",
+                GRPC_INCREMENTS + mqMessages.size(), totalNanos / 1_000_000, (GRPC_INCREMENTS + mqMessages.size()) / (totalNanos / 1e9));
+    }
+
+    StressedItem createItem(long minStock, long maxStock, long mqDelta) {
+        UUID id = UUID.randomUUID();
+        client.createItem(CreateItemRequest.newBuilder()
+                        .setId(id.toString())
+                        .setMinStock(minStock)
+                        .setMaxStock(maxStock)
+                        .build())
+                .await().atMost(TIMEOUT);
+        return new StressedItem(id, minStock, maxStock, maxStock, mqDelta);
+    }
+
+    void consume(String exchange, Consumer<RabbitMQMessage> handler) {
+        String queue = exchange + "-stress-" + UUID.randomUUID();
+        rabbitmq.exchangeDeclare(exchange, "topic", true, false)
+                .chain(() -> rabbitmq.queueDeclare(queue, false, true, true))
+                .chain(() -> rabbitmq.queueBind(queue, exchange, "#"))
+                .chain(() -> rabbitmq.basicConsumer(queue, new QueueOptions().setAutoAck(true)))
+                .await().atMost(TIMEOUT)
+                .handler(handler);
+    }
+
+    static IncrementStockSuccess parseSuccess(byte[] bytes) {
+        try {
+            return IncrementStockSuccess.parseFrom(bytes);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    static IncrementStockError parseError(byte[] bytes) {
+        try {
+            return IncrementStockError.parseFrom(bytes);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    static void sleep() {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+    }
+
+    record StressedItem(UUID id, long minStock, long maxStock, long initialStock, long mqDelta) {
+    }
+
+    record GrpcIncrement(UUID id, long delta) {
+    }
+
+    record GrpcResult(GrpcIncrement increment, long stock, boolean accepted) {
+    }
+}
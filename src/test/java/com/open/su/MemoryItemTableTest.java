@@ -0,0 +1,144 @@
+package com.open.su;
+
+import com.open.su.exceptions.ItemServiceException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+class MemoryItemTableTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testStockBounds() {
+        try (WriteAheadLog log = new WriteAheadLog(directory, 16, false)) {
+            MemoryItemTable table = new MemoryItemTable(log, 4);
+            UUID id = UUID.randomUUID();
+            table.create(item(id, 5L, 0L, 10L), 0);
+            Assertions.assertEquals(10L, table.increment(id, 5, 1).item().stock);
+            ItemServiceException e = Assertions.assertThrows(ItemServiceException.class, () -> table.increment(id, 1, 2));
+            Assertions.assertSame(ItemServiceException.Type.INVALID_ARGUMENT, e.getType());
+            e = Assertions.assertThrows(ItemServiceException.class, () -> table.increment(id, -11, 2));
+            Assertions.assertSame(ItemServiceException.Type.INVALID_ARGUMENT, e.getType());
+            e = Assertions.assertThrows(ItemServiceException.class, () -> table.create(item(id, 1L, 0L, 10L), 3));
+            Assertions.assertSame(ItemServiceException.Type.CONFLICT, e.getType());
+            e = Assertions.assertThrows(ItemServiceException.class, () -> table.increment(UUID.randomUUID(), 1, 3));
+            Assertions.assertSame(ItemServiceException.Type.NOT_FOUND, e.getType());
+        }
+    }
+
+    @Test
+    void testUpdateBounds() {
+        try (WriteAheadLog log = new WriteAheadLog(directory, 16, false)) {
+            MemoryItemTable table = new MemoryItemTable(log, 4);
+            UUID id = UUID.randomUUID();
+            Assertions.assertEquals(10L, table.create(item(id, null, 2L, 10L), 0).item().stock);
+            ItemServiceException e = Assertions.assertThrows(ItemServiceException.class, () -> table.update(item(id, 11L, null, null), 1));
+            Assertions.assertEquals("Stock cannot be greater than maximum stock", e.getMessage());
+            e = Assertions.assertThrows(ItemServiceException.class, () -> table.update(item(id, null, 11L, null), 1));
+            Assertions.assertEquals("Minimum stock must be less than maximum stock", e.getMessage());
+            e = Assertions.assertThrows(ItemServiceException.class, () -> table.update(item(id, null, null, 5L), 1));
+            Assertions.assertEquals("Maximum stock cannot be less than stock", e.getMessage());
+            Item item = table.update(item(id, 5L, null, 5L), 1).item();
+            Assertions.assertEquals(5L, item.stock);
+            Assertions.assertEquals(5L, item.maxStock);
+            e = Assertions.assertThrows(ItemServiceException.class, () -> table.update(item(id, null, 6L, null), 2));
+            Assertions.assertEquals("Minimum stock must be less than maximum stock", e.getMessage());
+            e = Assertions.assertThrows(ItemServiceException.class, () -> table.update(item(id, 1L, null, null), 2));
+            Assertions.assertEquals("Stock cannot be less than minimum stock", e.getMessage());
+        }
+    }
+
+    @Test
+    void testSyncCallbacksCanWriteToTheLog() {
+        try (WriteAheadLog log = new WriteAheadLog(directory, 2, true)) {
+            MemoryItemTable table = new MemoryItemTable(log, 4);
+            UUID id = UUID.randomUUID();
+            // Callbacks run on the thread completing the sync, and append and sync again from there
+            CompletableFuture<Void> chained = log.sync(table.create(item(id, 0L, 0L, 10L), 0).sequence())
+                    .thenCompose(v -> log.sync(table.increment(id, 1, 1).sequence()))
+                    .thenCompose(v -> log.sync(table.increment(id, 1, 2).sequence()))
+                    .toCompletableFuture();
+            chained.orTimeout(5, TimeUnit.SECONDS).join();
+            Assertions.assertEquals(2L, table.get(id).stock);
+        }
+    }
+
+    @Test
+    void testLogFailsWhenASegmentCannotBeAllocated() throws Exception {
+        try (WriteAheadLog log = new WriteAheadLog(directory, 2, true)) {
+            // The third segment cannot be created, as if the disk was full
+            Files.createDirectory(directory.resolve("wal-0000000000000003.log"));
+            Path second = directory.resolve("wal-0000000000000002.log");
+            for (int i = 0; i < 100 && !Files.exists(second); i++) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+
+            log.append(WriteAheadLog.PUT, 1, 1, 0, 0, 0, 0, 0);
+            log.append(WriteAheadLog.PUT, 1, 1, 0, 0, 0, 0, 0);
+            // Switches to the second segment, the flusher then fails to preallocate the third one
+            long sequence = log.append(WriteAheadLog.PUT, 1, 1, 0, 0, 0, 0, 0);
+            CompletableFuture<Void> synced = log.sync(sequence).toCompletableFuture();
+            CompletionException e = Assertions.assertThrows(CompletionException.class, () -> synced.orTimeout(5, TimeUnit.SECONDS).join());
+            Assertions.assertInstanceOf(IllegalStateException.class, e.getCause());
+            Assertions.assertThrows(IllegalStateException.class, () -> log.append(WriteAheadLog.PUT, 1, 1, 0, 0, 0, 0, 0));
+        }
+    }
+
+    @Test
+    void testRecoverFromSnapshotAndLog() {
+        UUID kept = UUID.randomUUID();
+        UUID deleted = UUID.randomUUID();
+        UUID created = UUID.randomUUID();
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        long firstSegment;
+        try (WriteAheadLog log = new WriteAheadLog(directory, 2, true)) {
+            MemoryItemTable table = new MemoryItemTable(log, 2);
+            table.create(item(kept, 1L, 0L, 100L), 0);
+            table.create(item(deleted, 1L, 0L, 100L), 0);
+            firstSegment = log.roll();
+            table.increment(kept, 10, 1);
+            table.dump(buffer -> snapshot.write(buffer.array(), 0, buffer.limit()));
+            // Mutations after the roll, some of which are already in the snapshot
+            table.increment(kept, 20, 2);
+            table.delete(deleted);
+            table.create(item(created, 3L, 1L, 5L), 3);
+            log.sync(table.increment(created, 1, 4).sequence()).toCompletableFuture().join();
+            log.deleteBefore(firstSegment);
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(directory, 2, true)) {
+            MemoryItemTable table = new MemoryItemTable(log, 2);
+            WriteAheadLog.read(ByteBuffer.wrap(snapshot.toByteArray()), table::replay);
+            Assertions.assertEquals(5, WriteAheadLog.replay(directory, firstSegment, table::replay));
+            Assertions.assertEquals(2, table.size());
+            Assertions.assertEquals(31L, table.get(kept).stock);
+            Assertions.assertNull(table.get(deleted));
+            Item item = table.get(created);
+            Assertions.assertEquals(4L, item.stock);
+            Assertions.assertEquals(1L, item.minStock);
+            Assertions.assertEquals(5L, item.maxStock);
+            Assertions.assertEquals(4L, item.updatedAt.getTime());
+        }
+    }
+
+    private static Item item(UUID id, Long stock, Long minStock, Long maxStock) {
+        Item item = new Item();
+        item.id = id;
+        item.stock = stock;
+        item.minStock = minStock;
+        item.maxStock = maxStock;
+        return item;
+    }
+}
@@ -0,0 +1,78 @@
+package com.open.su;
+
+import io.grpc.Deadline;
+import io.smallrye.mutiny.Uni;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> flights = new SingleFlight<>();
+    private final List<Deadline> started = new ArrayList<>();
+    private final List<CompletableFuture<String>> results = new ArrayList<>();
+    private final Function<Deadline, Uni<String>> computation = deadline -> {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        started.add(deadline);
+        results.add(result);
+        return Uni.createFrom().completionStage(result);
+    };
+
+    @Test
+    void testConcurrentCallersShareAComputation() {
+        Deadline deadline = Deadline.after(5, TimeUnit.SECONDS);
+        CompletableFuture<String> first = flights.run("key", deadline, computation).subscribeAsCompletionStage();
+        CompletableFuture<String> second = flights.run("key", deadline, computation).subscribeAsCompletionStage();
+        CompletableFuture<String> other = flights.run("other", deadline, computation).subscribeAsCompletionStage();
+        Assertions.assertEquals(2, started.size());
+
+        results.get(0).complete("value");
+        Assertions.assertEquals("value", first.join());
+        Assertions.assertEquals("value", second.join());
+        Assertions.assertFalse(other.isDone());
+
+        // A call after the computation ended starts a new one
+        flights.run("key", deadline, computation).subscribeAsCompletionStage();
+        Assertions.assertEquals(3, started.size());
+    }
+
+    @Test
+    void testComputationIsBoundedByTheLatestDeadlineOfItsCallers() {
+        Deadline soon = Deadline.after(1, TimeUnit.SECONDS);
+        Deadline later = Deadline.after(10, TimeUnit.SECONDS);
+        CompletableFuture<String> first = flights.run("key", soon, computation).subscribeAsCompletionStage();
+        // A caller with a later deadline does not join a computation that may be cancelled before it
+        CompletableFuture<String> second = flights.run("key", later, computation).subscribeAsCompletionStage();
+        // A caller with an earlier deadline joins the computation with the latest deadline
+        CompletableFuture<String> third = flights.run("key", soon, computation).subscribeAsCompletionStage();
+        Assertions.assertEquals(List.of(soon, later), started);
+
+        results.get(0).completeExceptionally(new IllegalStateException("statement timeout"));
+        Assertions.assertTrue(first.isCompletedExceptionally());
+        Assertions.assertFalse(second.isDone());
+        Assertions.assertFalse(third.isDone());
+
+        results.get(1).complete("value");
+        Assertions.assertEquals("value", second.join());
+        Assertions.assertEquals("value", third.join());
+    }
+
+    @Test
+    void testForgottenComputationIsNotJoined() {
+        Deadline deadline = Deadline.after(5, TimeUnit.SECONDS);
+        CompletableFuture<String> first = flights.run("key", deadline, computation).subscribeAsCompletionStage();
+        flights.forget("key");
+        CompletableFuture<String> second = flights.run("key", deadline, computation).subscribeAsCompletionStage();
+        Assertions.assertEquals(2, started.size());
+
+        results.get(1).complete("fresh");
+        results.get(0).complete("stale");
+        Assertions.assertEquals("stale", first.join());
+        Assertions.assertEquals("fresh", second.join());
+    }
+}
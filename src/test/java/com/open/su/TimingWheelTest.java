@@ -0,0 +1,51 @@
+package com.open.su;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+class TimingWheelTest {
+
+    @Test
+    void testValuesExpireAtTheEndOfTheirTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 4, 1000);
+        wheel.add("soon", 1015);
+        wheel.add("past", 900);
+        List<String> expired = new ArrayList<>();
+        wheel.advance(1009, expired::add);
+        Assertions.assertEquals(List.of(), expired);
+        wheel.advance(1010, expired::add);
+        Assertions.assertEquals(List.of("past"), expired);
+        wheel.advance(1019, expired::add);
+        Assertions.assertEquals(List.of("past"), expired);
+        wheel.advance(1020, expired::add);
+        Assertions.assertEquals(List.of("past", "soon"), expired);
+        Assertions.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testFarExpiriesCascadeThroughTheWheels() {
+        long start = 1_000_000;
+        TimingWheel<Long> wheel = new TimingWheel<>(10, 4, start);
+        Random random = new Random(42);
+        List<Long> expiries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            long expiresAt = start + random.nextInt(100_000);
+            expiries.add(expiresAt);
+            wheel.add(expiresAt, expiresAt);
+        }
+        for (long now = start; now <= start + 100_010; now += 7) {
+            long time = now;
+            wheel.advance(now, expiresAt -> {
+                Assertions.assertTrue(expiresAt <= time, expiresAt + " expired early at " + time);
+                Assertions.assertTrue(expiresAt > time - 10 - 7, expiresAt + " expired late at " + time);
+                expiries.remove(expiresAt);
+            });
+        }
+        Assertions.assertEquals(List.of(), expiries);
+        Assertions.assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,76 @@
+package com.open.su.controllers;
+
+import com.open.su.ConnectionWaitMonitor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class IncrementStockLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void testMessagesOverTheLimitWait() {
+        IncrementStockLimiter limiter = limiter(new ConnectionWaitMonitor(new SimpleMeterRegistry()), 2);
+        AtomicBoolean started = new AtomicBoolean();
+        Assertions.assertTrue(limiter.acquire(() -> {
+        }));
+        Assertions.assertTrue(limiter.acquire(() -> {
+        }));
+        Assertions.assertFalse(limiter.acquire(() -> started.set(true)));
+        Assertions.assertEquals(1, limiter.waiting());
+        limiter.release(FAST);
+        Assertions.assertTrue(started.get());
+        Assertions.assertEquals(0, limiter.waiting());
+        Assertions.assertEquals(2, limiter.inFlight());
+    }
+
+    @Test
+    void testLimitGrowsWhileSaturated() {
+        IncrementStockLimiter limiter = limiter(new ConnectionWaitMonitor(new SimpleMeterRegistry()), 4);
+        for (int i = 0; i < 1000; i++) {
+            while (limiter.acquire(() -> {
+            })) {
+                // Fill the limit
+            }
+            limiter.release(FAST);
+        }
+        Assertions.assertEquals(16d, limiter.limit());
+    }
+
+    @Test
+    void testLimitShrinksOnSlowMessages() {
+        IncrementStockLimiter limiter = limiter(new ConnectionWaitMonitor(new SimpleMeterRegistry()), 10);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire(() -> {
+            });
+        }
+        for (int i = 0; i < 10; i++) {
+            limiter.release(SLOW);
+        }
+        Assertions.assertEquals(10 * IncrementStockLimiter.DECREASE, limiter.limit(), 0.001);
+    }
+
+    @Test
+    void testLimitShrinksOnConnectionWaits() {
+        ConnectionWaitMonitor connectionWaits = new ConnectionWaitMonitor(new SimpleMeterRegistry());
+        IncrementStockLimiter limiter = limiter(connectionWaits, 2);
+        for (int i = 0; i < 100; i++) {
+            connectionWaits.record(SLOW);
+            limiter.acquire(() -> {
+            });
+            limiter.release(FAST);
+        }
+        Assertions.assertEquals(1d, limiter.limit());
+    }
+
+    private static IncrementStockLimiter limiter(ConnectionWaitMonitor connectionWaits, int initialLimit) {
+        return new IncrementStockLimiter(connectionWaits, new SimpleMeterRegistry(), 1, 16, initialLimit,
+                Duration.ofMillis(10), Duration.ofMillis(100));
+    }
+}
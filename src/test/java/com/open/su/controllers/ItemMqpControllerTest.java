@@ -0,0 +1,58 @@
+package com.open.su.controllers;
+
+import com.open.su.controllers.models.IncrementStockFormat;
+import io.vertx.core.json.JsonObject;
+import org.eclipse.microprofile.reactive.messaging.Message;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+class ItemMqpControllerTest {
+
+    private final ItemMqpController controller = new ItemMqpController(null, null, null);
+    private final AtomicInteger acks = new AtomicInteger();
+    private final AtomicReference<Throwable> nack = new AtomicReference<>();
+    private final Message<?> incoming = Message.of("{}",
+            () -> {
+                acks.incrementAndGet();
+                return CompletableFuture.completedFuture(null);
+            },
+            t -> {
+                nack.set(t);
+                return CompletableFuture.completedFuture(null);
+            });
+
+    @Test
+    void testIncomingIsAcknowledgedOnceTheResultIsConfirmed() {
+        Message<?> result = controller.reply(incoming, IncrementStockFormat.JSON, "increment-stock-out", new JsonObject())
+                .get("increment-stock-out");
+        Assertions.assertEquals(0, acks.get());
+
+        // The connector acknowledges the result when the broker confirms its publication
+        result.ack().toCompletableFuture().join();
+        Assertions.assertEquals(1, acks.get());
+        Assertions.assertNull(nack.get());
+    }
+
+    @Test
+    void testIncomingIsRejectedWhenTheResultIsNotConfirmed() {
+        Message<?> result = controller.reply(incoming, IncrementStockFormat.JSON, "increment-stock-error", new JsonObject())
+                .get("increment-stock-error");
+        IllegalStateException failure = new IllegalStateException("Publication not confirmed");
+        result.nack(failure).toCompletableFuture().join();
+        Assertions.assertSame(failure, nack.get());
+        Assertions.assertEquals(0, acks.get());
+    }
+
+    @Test
+    void testInvalidIncomingIsRejectedWithoutResult() {
+        Message<?> invalid = incoming.withPayload("{not json");
+        Assertions.assertNull(controller.incrementStock(invalid).await().atMost(Duration.ofSeconds(5)));
+        Assertions.assertInstanceOf(IllegalArgumentException.class, nack.get());
+        Assertions.assertEquals(0, acks.get());
+    }
+}
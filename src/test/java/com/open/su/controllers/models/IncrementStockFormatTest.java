@@ -0,0 +1,100 @@
+package com.open.su.controllers.models;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.open.su.controllers.models.proto.IncrementStock;
+import com.open.su.controllers.models.proto.IncrementStockError;
+import com.open.su.controllers.models.proto.IncrementStockSuccess;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+class IncrementStockFormatTest {
+
+    private static final UUID ITEM_ID = UUID.randomUUID();
+
+    @Test
+    void testJsonDecode() {
+        JsonObject json = new JsonObject().put("itemId", ITEM_ID.toString()).put("quantity", -3);
+        IncrementStockMessage expected = new IncrementStockMessage(ITEM_ID, -3L);
+        for (Object payload : List.of(json, json.toBuffer(), json.encode(), json.toBuffer().getBytes())) {
+            Assertions.assertEquals(expected, IncrementStockFormat.JSON.decode(payload));
+        }
+    }
+
+    @Test
+    void testJsonDecodeOfMalformedPayloads() {
+        List<Object> payloads = List.of(
+                "{not json",
+                Buffer.buffer("[1, 2]"),
+                "{\"itemId\": \"not a uuid\", \"quantity\": 1}",
+                "{\"itemId\": \"" + ITEM_ID + "\", \"quantity\": \"many\"}",
+                "{\"quantity\": 1}",
+                "{\"itemId\": \"" + ITEM_ID + "\"}",
+                42);
+        for (Object payload : payloads) {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> IncrementStockFormat.JSON.decode(payload), String.valueOf(payload));
+        }
+    }
+
+    @Test
+    void testJsonEncode() {
+        JsonObject success = (JsonObject) IncrementStockFormat.JSON.encode(new IncrementStockSuccessMessage(ITEM_ID, 7L));
+        Assertions.assertEquals(new IncrementStockSuccessMessage(ITEM_ID, 7L), success.mapTo(IncrementStockSuccessMessage.class));
+
+        IncrementStockErrorMessage errorMessage = new IncrementStockErrorMessage("Item not found", IncrementStockErrorMessage.Type.ITEM_NOT_FOUND, ITEM_ID);
+        JsonObject error = (JsonObject) IncrementStockFormat.JSON.encode(errorMessage);
+        Assertions.assertEquals(errorMessage, error.mapTo(IncrementStockErrorMessage.class));
+        Assertions.assertEquals("Item not found", error.getJsonObject("throwable").getString("message"));
+    }
+
+    @Test
+    void testProtobufDecode() {
+        byte[] bytes = IncrementStock.newBuilder()
+                .setItemIdMsb(ITEM_ID.getMostSignificantBits())
+                .setItemIdLsb(ITEM_ID.getLeastSignificantBits())
+                .setQuantity(-3)
+                .build().toByteArray();
+        IncrementStockMessage expected = new IncrementStockMessage(ITEM_ID, -3L);
+        Assertions.assertEquals(expected, IncrementStockFormat.PROTOBUF.decode(bytes));
+        Assertions.assertEquals(expected, IncrementStockFormat.PROTOBUF.decode(Buffer.buffer(bytes)));
+    }
+
+    @Test
+    void testProtobufDecodeOfMalformedPayloads() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> IncrementStockFormat.PROTOBUF.decode(new byte[]{(byte) 0xFF}));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> IncrementStockFormat.PROTOBUF.decode(new byte[]{0x09, 0x01, 0x02}));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> IncrementStockFormat.PROTOBUF.decode(42));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> IncrementStockFormat.PROTOBUF.decode(new byte[0]));
+        byte[] withoutItemId = IncrementStock.newBuilder().setQuantity(1).build().toByteArray();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> IncrementStockFormat.PROTOBUF.decode(withoutItemId));
+        byte[] withoutQuantity = IncrementStock.newBuilder()
+                .setItemIdMsb(ITEM_ID.getMostSignificantBits())
+                .setItemIdLsb(ITEM_ID.getLeastSignificantBits())
+                .build().toByteArray();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> IncrementStockFormat.PROTOBUF.decode(withoutQuantity));
+    }
+
+    @Test
+    void testProtobufEncode() throws InvalidProtocolBufferException {
+        IncrementStockSuccess success = IncrementStockSuccess.parseFrom((byte[]) IncrementStockFormat.PROTOBUF.encode(new IncrementStockSuccessMessage(ITEM_ID, 7L)));
+        Assertions.assertEquals(ITEM_ID, new UUID(success.getItemIdMsb(), success.getItemIdLsb()));
+        Assertions.assertEquals(7L, success.getStock());
+
+        for (IncrementStockErrorMessage.Type type : IncrementStockErrorMessage.Type.values()) {
+            IncrementStockError error = IncrementStockError.parseFrom((byte[]) IncrementStockFormat.PROTOBUF.encode(new IncrementStockErrorMessage("failed", type, ITEM_ID)));
+            Assertions.assertEquals(type.name(), error.getType().name());
+            Assertions.assertNotEquals(IncrementStockError.Type.TYPE_UNSPECIFIED, error.getType());
+            Assertions.assertEquals(ITEM_ID, new UUID(error.getItemIdMsb(), error.getItemIdLsb()));
+            Assertions.assertEquals("failed", error.getMessage());
+        }
+
+        IncrementStockError anonymous = IncrementStockError.parseFrom((byte[]) IncrementStockFormat.PROTOBUF.encode(
+                new IncrementStockErrorMessage(null, IncrementStockErrorMessage.Type.UNEXPECTED_ERROR, null)));
+        Assertions.assertEquals(0, anonymous.getItemIdMsb());
+        Assertions.assertEquals("", anonymous.getMessage());
+    }
+}
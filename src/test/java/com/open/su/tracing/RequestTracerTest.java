@@ -0,0 +1,139 @@
+package com.open.su.tracing;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.smallrye.common.vertx.VertxContext;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+class RequestTracerTest {
+
+    private Vertx vertx;
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @AfterEach
+    void tearDown() {
+        vertx.close().toCompletionStage().toCompletableFuture().join();
+    }
+
+    @Test
+    void testStagesAddUpToTheDuration() throws InterruptedException {
+        RequestTrace trace = new RequestTrace("Operation");
+        trace.mark("connection");
+        Thread.sleep(5);
+        trace.mark("select");
+        trace.finish("response", new IllegalStateException());
+
+        JsonObject json = trace.toJson();
+        Assertions.assertEquals("Operation", json.getString("operation"));
+        Assertions.assertEquals("IllegalStateException", json.getString("failure"));
+        JsonArray stages = json.getJsonArray("stages");
+        Assertions.assertEquals(List.of("connection", "select", "response"), stages.stream().map(stage -> ((JsonObject) stage).getString("stage")).toList());
+        Assertions.assertTrue(stages.getJsonObject(1).getDouble("ms") >= 5);
+        double total = stages.stream().mapToDouble(stage -> ((JsonObject) stage).getDouble("ms")).sum();
+        Assertions.assertEquals(json.getDouble("ms"), total, 0.01);
+    }
+
+    @Test
+    void testUnsampledTraceRecordsNothing() {
+        RequestTrace.NONE.mark("select");
+        Assertions.assertTrue(RequestTrace.NONE.stages.isEmpty());
+    }
+
+    @Test
+    void testRequestsAreSampled() {
+        RecordingTracer never = new RecordingTracer(0, Duration.ZERO);
+        Assertions.assertSame(RequestTrace.NONE, onContext(() -> never.trace("Operation", () -> {
+            never.current().mark("select");
+            return Uni.createFrom().item(never::current);
+        })));
+        // Requests that are not sampled are still reported, without their stages
+        Assertions.assertEquals(1, never.exported.size());
+        Assertions.assertFalse(never.exported.get(0).sampled);
+        Assertions.assertTrue(never.exported.get(0).stages.isEmpty());
+
+        RecordingTracer always = new RecordingTracer(1, Duration.ZERO);
+        RequestTrace trace = onContext(() -> always.trace("Operation", () -> {
+            always.current().mark("select");
+            return Uni.createFrom().item(always::current);
+        }));
+        Assertions.assertNotSame(RequestTrace.NONE, trace);
+        Assertions.assertTrue(trace.sampled);
+        Assertions.assertEquals(List.of(trace), always.exported);
+        Assertions.assertEquals(List.of("select", "response"), trace.stages.stream().map(RequestTrace.Stage::name).toList());
+        // The trace is only carried by the context of the request
+        Assertions.assertSame(RequestTrace.NONE, onContext(() -> Uni.createFrom().item(always::current)));
+        Assertions.assertSame(RequestTrace.NONE, always.current());
+    }
+
+    @Test
+    void testOnlySlowRequestsAreReported() {
+        RecordingTracer tracer = new RecordingTracer(1, Duration.ofMillis(50));
+        onContext(() -> tracer.trace("Fast", () -> Uni.createFrom().item("fast")));
+        Assertions.assertTrue(tracer.exported.isEmpty());
+
+        onContext(() -> tracer.trace("Slow", () -> Uni.createFrom().emitter(emitter -> vertx.setTimer(100, id -> emitter.complete("slow")))));
+        Assertions.assertEquals(List.of("Slow"), tracer.exported.stream().map(trace -> trace.operation).toList());
+        Assertions.assertTrue(tracer.exported.get(0).durationNanos() >= Duration.ofMillis(100).toNanos());
+    }
+
+    @Test
+    void testSlowRequestsAreReportedWithoutSampling() {
+        RecordingTracer tracer = new RecordingTracer(0, Duration.ofMillis(50));
+        onContext(() -> tracer.trace("Fast", () -> Uni.createFrom().item("fast")));
+        Assertions.assertTrue(tracer.exported.isEmpty());
+
+        IllegalStateException failure = new IllegalStateException();
+        CompletionException thrown = Assertions.assertThrows(CompletionException.class, () -> onContext(() -> tracer.trace("Slow",
+                () -> Uni.createFrom().emitter(emitter -> vertx.setTimer(100, id -> emitter.fail(failure))))));
+        Assertions.assertSame(failure, thrown.getCause());
+        Assertions.assertEquals(1, tracer.exported.size());
+        RequestTrace trace = tracer.exported.get(0);
+        Assertions.assertEquals("Slow", trace.operation);
+        Assertions.assertSame(failure, trace.failure);
+        Assertions.assertTrue(trace.durationNanos() >= Duration.ofMillis(100).toNanos());
+
+        JsonObject json = trace.toJson();
+        Assertions.assertFalse(json.getBoolean("sampled"));
+        Assertions.assertTrue(json.getJsonArray("stages").isEmpty());
+        Assertions.assertEquals(json.getDouble("ms"), trace.durationNanos() / 1_000_000d, 0.01);
+    }
+
+    private <T> T onContext(Supplier<Uni<T>> request) {
+        Context context = VertxContext.getOrCreateDuplicatedContext(vertx.getOrCreateContext());
+        CompletableFuture<T> result = new CompletableFuture<>();
+        context.runOnContext(v -> request.get().subscribe().with(result::complete, result::completeExceptionally));
+        return result.join();
+    }
+
+    private static class RecordingTracer extends RequestTracer {
+
+        private final List<RequestTrace> exported = new CopyOnWriteArrayList<>();
+
+        RecordingTracer(double sampleRate, Duration slowThreshold) {
+            super(sampleRate, slowThreshold, true, OpenTelemetry.noop().getTracer("test"));
+        }
+
+        @Override
+        void export(RequestTrace trace) {
+            exported.add(trace);
+        }
+    }
+}